@@ -0,0 +1,359 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Simple throughput benchmarks for the CAST-384 engines.
+ * <br/>
+ * Run with "gradle benchmark". Each case is warmed up and then timed for a fixed
+ * period, and the result is reported in MB/s of data processed. The numbers are only
+ * comparable between runs on the same machine.
+ * <br/>
+ * Sections can be selected by name, e.g. "gradle benchmark --args='cache'"; with no
+ * arguments every section runs. Sections: bulk, cache, keys, latency.
+ * <br/>
+ * The startup section measures a cold JVM and must be run on its own, optionally
+ * with "warm" to call Warmup.run first: "gradle benchmark --args='startup warm'".
+ */
+public class Benchmark {
+
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+
+    private static final int BULK_BLOCKS = 4096;   // 96 KiB per bulk call
+    private static final int PARALLEL_BYTES = 16 << 20;         // Per parallel CTR call
+
+    private static final int KEY_BATCH = 1024;                  // Keys expanded per call
+
+    private static final int CACHE_BLOCKS = 16;                 // Small bulk call between sweeps
+    private static final int WORKING_SET_INTS = 32 * 1024 / 4;  // 32 KiB per thread, about one L1D
+
+    private static final int STARTUP_BLOCKS = 170;              // About 4 KiB per call
+    private static final int STARTUP_MEGABYTES = 8;
+
+    private static final int LATENCY_BYTES = 256;               // Per message
+    private static final int LATENCY_MESSAGES = 100_000;        // Timed, after as many untimed
+    private static final long LATENCY_GAP_NANOS = 20_000;       // Idle time between messages
+
+    public static void main(String[] args) {
+        byte[] key = new byte[48];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (i * 7 + 3);
+        }
+
+        List<String> sections = Arrays.asList(args);
+        if (sections.contains("startup")) {
+            startupSection(key, sections.contains("warm"));
+            return;
+        }
+        if (sections.isEmpty() || sections.contains("bulk")) {
+            bulkSection(key);
+        }
+        if (sections.isEmpty() || sections.contains("cache")) {
+            cacheSection(key);
+        }
+        if (sections.isEmpty() || sections.contains("keys")) {
+            keySection();
+        }
+        if (sections.isEmpty() || sections.contains("latency")) {
+            latencySection(key);
+        }
+    }
+
+    private static void bulkSection(byte[] key) {
+        System.out.println("-- Bulk encryptBlocks, " + BULK_BLOCKS + " blocks per call --");
+        for (int lanes : new int[] { 1, 2, 4, 8 }) {
+            CAST384 cipher = new CAST384();
+            cipher.initialise(key);
+            cipher.setLanes(lanes);
+            bulk("lanes=" + lanes, cipher);
+        }
+
+        CAST384 compiled = new CAST384();
+        compiled.initialise(key);
+        compiled.compileKey();
+        bulk("compiled key", compiled);
+
+        CAST384 bitsliced = new CAST384();
+        bitsliced.initialise(key);
+        bitsliced.setBitsliced(true);
+        bulk("bitsliced", bitsliced);
+
+        CAST384 vector = new CAST384();
+        vector.initialise(key);
+        if (vector.setVectorized(true)) {
+            bulk("vector", vector);
+        } else {
+            System.out.println("vector                           (jdk.incubator.vector not available)");
+        }
+
+        CTRMode ctr = new CTRMode();
+        ctr.initialise(new CAST384(), key, new byte[16]);
+        byte[] data = new byte[BULK_BLOCKS * 24];
+        report("CTR", data.length, () -> ctr.encrypt(data));
+
+        ParallelCTR parallel = new ParallelCTR(CAST384Key.of(key), new byte[16]);
+        byte[] large = new byte[PARALLEL_BYTES];
+        report("CTR parallel, " + ForkJoinPool.getCommonPoolParallelism() + " threads", large.length,
+                () -> parallel.encrypt(large));
+    }
+
+    /**
+     * Compares the S-box layouts under cache pressure.
+     * How it works:
+     * Each thread owns a cipher and a private 32 KiB working set. One operation walks the
+     * working set a cache line at a time, evicting most of the S-boxes from L1, and then
+     * encrypts a handful of blocks, so the cipher keeps re-fetching its tables. Layouts
+     * that span fewer lines recover faster. The result counts only the encrypted bytes.
+     * For the underlying miss counts run the same section under
+     * "perf stat -e L1-dcache-load-misses".
+     */
+    private static void cacheSection(byte[] key) {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = maxThreads > 1 ? new int[] { 1, maxThreads } : new int[] { 1 };
+
+        System.out.println("-- Cache pressure, " + CACHE_BLOCKS + " blocks per 32 KiB sweep --");
+        for (CAST384.SboxLayout layout : CAST384.SboxLayout.values()) {
+            for (int threads : threadCounts) {
+                Runnable[] ops = new Runnable[threads];
+                for (int t = 0; t < threads; t++) {
+                    CAST384 cipher = new CAST384();
+                    cipher.initialise(key);
+                    cipher.setLanes(1);
+                    cipher.setSboxLayout(layout);
+                    ops[t] = sweepAndEncrypt(cipher);
+                }
+                report(layout.name().toLowerCase(Locale.ROOT) + " threads=" + threads,
+                        CACHE_BLOCKS * 24L, ops);
+            }
+        }
+    }
+
+    /**
+     * Reports how quickly a fresh JVM reaches full speed.
+     * How it works:
+     * Prints the JVM uptime when the section starts, then encrypts STARTUP_MEGABYTES
+     * in calls of about 4 KiB and prints the throughput of each megabyte with the
+     * uptime at its end. Until the engine is compiled the first megabytes run far
+     * below the steady rate; with warm the warm-up runs first and is timed too.
+     */
+    private static void startupSection(byte[] key, boolean warm) {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        System.out.println("-- Startup, " + (warm ? "after Warmup.run" : "cold") + " --");
+        System.out.printf(Locale.ROOT, "%-32s %10d ms%n", "uptime at start", runtime.getUptime());
+        if (warm) {
+            long start = System.nanoTime();
+            Warmup.run();
+            System.out.printf(Locale.ROOT, "%-32s %10d ms%n", "warm-up", (System.nanoTime() - start) / 1_000_000);
+        }
+
+        CAST384 cipher = new CAST384();
+        cipher.initialise(key);
+        byte[] data = new byte[STARTUP_BLOCKS * 24];
+        for (int mb = 1; mb <= STARTUP_MEGABYTES; mb++) {
+            long start = System.nanoTime();
+            for (long done = 0; done < 1_000_000; done += data.length) {
+                cipher.encryptBlocks(data, 0, data, 0, STARTUP_BLOCKS);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "%-32s %10.1f MB/s   (uptime %d ms)%n",
+                    "MB " + mb, 1 / seconds, runtime.getUptime());
+        }
+    }
+
+    /**
+     * Compares one-at-a-time key setup through initialise with KeyBatch expansion.
+     */
+    private static void keySection() {
+        byte[][] keys = new byte[KEY_BATCH][48];
+        for (int k = 0; k < keys.length; k++) {
+            for (int i = 0; i < 48; i++) {
+                keys[k][i] = (byte) (k * 31 + i);
+            }
+        }
+
+        System.out.println("-- Key setup, " + KEY_BATCH + " keys per call --");
+        CAST384 cipher = new CAST384();
+        reportKeys("initialise", KEY_BATCH, () -> {
+            for (byte[] k : keys) {
+                cipher.initialise(k);
+            }
+        });
+        reportKeys("rekey", KEY_BATCH, () -> {
+            for (byte[] k : keys) {
+                cipher.rekey(k, 0, k.length);
+            }
+        });
+        KeyCache cache = new KeyCache(KEY_BATCH);
+        reportKeys("KeyCache (all hits)", KEY_BATCH, () -> {
+            for (byte[] k : keys) {
+                cache.initialise(cipher, k);
+            }
+        });
+        reportKeys("KeyBatch", KEY_BATCH, () -> KeyBatch.expand(keys));
+        reportKeys("KeyBatch parallel", KEY_BATCH, () -> KeyBatch.expand(keys, true));
+
+        // One block under each key: switching round keys per block against the batch engine
+        System.out.println("-- One block per key, " + KEY_BATCH + " keys --");
+        KeyBatch batch = KeyBatch.expand(keys);
+        CASTKeySet[] sets = new CASTKeySet[KEY_BATCH];
+        for (int k = 0; k < sets.length; k++) {
+            sets[k] = batch.keySet(k);
+        }
+        byte[] data = new byte[KEY_BATCH * 24];
+        report("setRoundKeys per block", data.length, () -> {
+            for (int k = 0; k < sets.length; k++) {
+                cipher.setRoundKeys(sets[k]);
+                cipher.encryptBlocks(data, k * 24, data, k * 24, 1);
+            }
+        });
+        report("KeyBatch.encryptBlocks", data.length, () -> batch.encryptBlocks(data, 0, data, 0));
+    }
+
+    private static Runnable sweepAndEncrypt(Cipher cipher) {
+        int[] workingSet = new int[WORKING_SET_INTS];
+        byte[] data = new byte[CACHE_BLOCKS * 24];
+        return () -> {
+            // One write per 64-byte line so every line is pulled into L1
+            for (int i = 0; i < workingSet.length; i += 16) {
+                workingSet[i]++;
+            }
+            cipher.encryptBlocks(data, 0, data, 0, CACHE_BLOCKS);
+        };
+    }
+
+    /**
+     * Compares per-message latency of CTR with and without keystream prefetch.
+     * How it works:
+     * Messages of LATENCY_BYTES arrive LATENCY_GAP_NANOS apart, as from a network, and
+     * each one is timed on its own. Without prefetch a message pays for its keystream;
+     * with prefetch the producer thread refills the ring in the gaps, so a message
+     * only XORs. A plain copy of the same size is the floor. Prefetch needs a spare
+     * core for the producer to help.
+     */
+    private static void latencySection(byte[] key) {
+        System.out.println("-- CTR latency, " + LATENCY_BYTES + "-byte messages --");
+        byte[] src = new byte[LATENCY_BYTES];
+        byte[] dst = new byte[LATENCY_BYTES];
+        latency("copy", () -> System.arraycopy(src, 0, dst, 0, LATENCY_BYTES));
+
+        CTRMode ctr = new CTRMode();
+        ctr.initialise(new CAST384(), key, new byte[16]);
+        latency("ctr", () -> ctr.encrypt(src, 0, LATENCY_BYTES, dst, 0));
+
+        ctr.enablePrefetch(4096, 1024);
+        try {
+            latency("ctr prefetch", () -> ctr.encrypt(src, 0, LATENCY_BYTES, dst, 0));
+        } finally {
+            ctr.disablePrefetch();
+        }
+    }
+
+    /**
+     * Times LATENCY_MESSAGES calls of op, LATENCY_GAP_NANOS apart, and prints the
+     * median and 99th percentile.
+     */
+    private static void latency(String name, Runnable op) {
+        long[] times = new long[LATENCY_MESSAGES];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < LATENCY_MESSAGES; i++) {
+                long next = System.nanoTime() + LATENCY_GAP_NANOS;
+                while (System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+                long start = System.nanoTime();
+                op.run();
+                times[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(times);
+        System.out.printf(Locale.ROOT, "%-32s %10d ns p50 %10d ns p99%n", name,
+                times[LATENCY_MESSAGES / 2], times[LATENCY_MESSAGES * 99 / 100]);
+    }
+
+    private static void bulk(String name, Cipher cipher) {
+        byte[] data = new byte[BULK_BLOCKS * 24];
+        report(name, data.length, () -> cipher.encryptBlocks(data, 0, data, 0, BULK_BLOCKS));
+    }
+
+    /**
+     * Runs op repeatedly for the warm-up period, then times it and prints the
+     * throughput.
+     *
+     * @param name          label printed with the result
+     * @param bytesPerOp    number of bytes one invocation of op processes
+     * @param op            the operation to measure
+     */
+    static void report(String name, long bytesPerOp, Runnable op) {
+        run(op, WARMUP_NANOS);
+        long start = System.nanoTime();
+        long ops = run(op, MEASURE_NANOS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%-32s %10.1f MB/s%n", name, ops * bytesPerOp / 1e6 / seconds);
+    }
+
+    /**
+     * Like report, but prints the rate in keys per second.
+     *
+     * @param name       label printed with the result
+     * @param keysPerOp  number of keys one invocation of op sets up
+     * @param op         the operation to measure
+     */
+    static void reportKeys(String name, long keysPerOp, Runnable op) {
+        run(op, WARMUP_NANOS);
+        long start = System.nanoTime();
+        long ops = run(op, MEASURE_NANOS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%-32s %10.0f keys/s%n", name, ops * keysPerOp / seconds);
+    }
+
+    /**
+     * Runs one operation per thread concurrently and prints the combined throughput.
+     *
+     * @param name          label printed with the result
+     * @param bytesPerOp    number of bytes one invocation of any op processes
+     * @param ops           the operations to measure, one thread each
+     */
+    static void report(String name, long bytesPerOp, Runnable[] ops) {
+        long[] counts = new long[ops.length];
+        long[] elapsed = new long[ops.length];
+        Thread[] threads = new Thread[ops.length];
+        for (int t = 0; t < ops.length; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                run(ops[index], WARMUP_NANOS);
+                long start = System.nanoTime();
+                counts[index] = run(ops[index], MEASURE_NANOS);
+                elapsed[index] = System.nanoTime() - start;
+            });
+            threads[t].start();
+        }
+
+        double total = 0;
+        for (int t = 0; t < ops.length; t++) {
+            try {
+                threads[t].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            total += counts[t] * bytesPerOp / 1e6 / (elapsed[t] / 1e9);
+        }
+        System.out.printf(Locale.ROOT, "%-32s %10.1f MB/s%n", name, total);
+    }
+
+    private static long run(Runnable op, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long ops = 0;
+        while (System.nanoTime() < end) {
+            op.run();
+            ops++;
+        }
+        return ops;
+    }
+}
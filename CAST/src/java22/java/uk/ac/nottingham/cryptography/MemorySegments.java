@@ -0,0 +1,116 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+
+/**
+ * Encrypts and decrypts foreign-memory regions (java.lang.foreign.MemorySegment),
+ * which may be larger than 2 GB.
+ * <p>
+ * How it works:
+ * Offsets and lengths are longs. The region is walked in slices of at most
+ * CHUNK_BYTES, each exposed as a ByteBuffer view over the same memory (no copy) and
+ * passed to the ByteBuffer API of the cipher or mode. This works for segments over
+ * heap arrays, Arena-allocated native memory and files mapped with FileChannel.map.
+ * CHUNK_BYTES is a multiple of the 24-byte block size, so block ciphers only see whole
+ * blocks, and CipherMode keeps its streaming state across slices as it does across
+ * calls.
+ * <br/>
+ * This class requires Java 22 and ships in its own jar (classifier java22), used next
+ * to the main jar, which runs on Java 17.
+ */
+public final class MemorySegments {
+
+    static final long CHUNK_BYTES = 24L << 25;   // 768 MiB: block aligned and below 2 GB
+
+    private MemorySegments() {
+    }
+
+    /**
+     * Encrypts all of src into dst with a block cipher. src must hold a whole number
+     * of blocks; src and dst may be the same segment.
+     *
+     * @param cipher the initialised cipher
+     * @param src    segment holding the plaintext
+     * @param dst    segment receiving the ciphertext (at least as large as src)
+     */
+    public static void encrypt(Cipher cipher, MemorySegment src, MemorySegment dst) {
+        process(cipher, null, src, dst, true);
+    }
+
+    /**
+     * Decrypts all of src into dst with a block cipher. src must hold a whole number
+     * of blocks; src and dst may be the same segment.
+     *
+     * @param cipher the initialised cipher
+     * @param src    segment holding the ciphertext
+     * @param dst    segment receiving the plaintext (at least as large as src)
+     */
+    public static void decrypt(Cipher cipher, MemorySegment src, MemorySegment dst) {
+        process(cipher, null, src, dst, false);
+    }
+
+    /**
+     * Encrypts all of src into dst with a cipher mode, continuing its keystream.
+     *
+     * @param mode the initialised mode
+     * @param src  segment holding the plaintext
+     * @param dst  segment receiving the ciphertext (at least as large as src)
+     */
+    public static void encrypt(CipherMode mode, MemorySegment src, MemorySegment dst) {
+        process(null, mode, src, dst, true);
+    }
+
+    /**
+     * Decrypts all of src into dst with a cipher mode, continuing its keystream.
+     *
+     * @param mode the initialised mode
+     * @param src  segment holding the ciphertext
+     * @param dst  segment receiving the plaintext (at least as large as src)
+     */
+    public static void decrypt(CipherMode mode, MemorySegment src, MemorySegment dst) {
+        process(null, mode, src, dst, false);
+    }
+
+    /**
+     * Encrypts or decrypts length bytes of segment starting at offset, in place.
+     *
+     * @param mode    the initialised mode
+     * @param segment the region to process
+     * @param offset  byte offset of the first byte to process
+     * @param length  number of bytes to process
+     */
+    public static void process(CipherMode mode, MemorySegment segment, long offset, long length) {
+        MemorySegment slice = segment.asSlice(offset, length);
+        process(null, mode, slice, slice, true);
+    }
+
+    private static void process(Cipher cipher, CipherMode mode, MemorySegment src, MemorySegment dst,
+                                boolean forward) {
+        long len = src.byteSize();
+        if (dst.byteSize() < len) {
+            throw new IndexOutOfBoundsException("Destination segment is smaller than the source");
+        }
+        if (cipher != null && len % (cipher.getBlockLength() / 8) != 0) {
+            throw new IllegalArgumentException("Input must be a whole number of blocks");
+        }
+
+        for (long pos = 0; pos < len; pos += CHUNK_BYTES) {
+            long n = Math.min(CHUNK_BYTES, len - pos);
+            ByteBuffer in = src.asSlice(pos, n).asByteBuffer();
+            ByteBuffer out = src == dst ? in : dst.asSlice(pos, n).asByteBuffer();
+
+            if (cipher != null) {
+                if (forward) {
+                    cipher.encrypt(in, out);
+                } else {
+                    cipher.decrypt(in, out);
+                }
+            } else if (forward) {
+                mode.encrypt(in, out);
+            } else {
+                mode.decrypt(in, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CTRMode;
+import uk.ac.nottingham.cryptography.MemorySegments;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MemorySegmentTests {
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i * 7 + 1);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 5 + 30);
+        }
+    }
+
+    private static CAST384 cipher() {
+        CAST384 cipher = new CAST384();
+        cipher.initialise(keyA);
+        return cipher;
+    }
+
+    private static CTRMode mode() {
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        return mode;
+    }
+
+    private static MemorySegment copyOf(Arena arena, byte[] data) {
+        MemorySegment segment = arena.allocate(data.length);
+        segment.copyFrom(MemorySegment.ofArray(data));
+        return segment;
+    }
+
+    @Test
+    @Order(0)
+    void blockCipherTest() {
+        byte[] plaintext = source(24 * 100);
+        byte[] expected = new byte[plaintext.length];
+        cipher().encryptBlocks(plaintext, 0, expected, 0, 100);
+
+        try (Arena arena = Arena.ofConfined()) {
+            // Heap source into native destination, then back in place
+            MemorySegment dst = arena.allocate(plaintext.length);
+            MemorySegments.encrypt(cipher(), MemorySegment.ofArray(plaintext.clone()), dst);
+            assertArrayEquals(expected, dst.toArray(ValueLayout.JAVA_BYTE));
+
+            MemorySegments.decrypt(cipher(), dst, dst);
+            assertArrayEquals(plaintext, dst.toArray(ValueLayout.JAVA_BYTE));
+        }
+    }
+
+    @Test
+    @Order(1)
+    void ctrTest() {
+        byte[] plaintext = source(24 * 100 + 13);
+        byte[] expected = plaintext.clone();
+        mode().encrypt(expected);
+
+        try (Arena arena = Arena.ofConfined()) {
+            // Two calls on one mode continue the keystream mid-block
+            MemorySegment src = copyOf(arena, plaintext);
+            MemorySegment dst = arena.allocate(plaintext.length);
+            CTRMode mode = mode();
+            MemorySegments.encrypt(mode, src.asSlice(0, 1001), dst.asSlice(0, 1001));
+            MemorySegments.encrypt(mode, src.asSlice(1001), dst.asSlice(1001));
+            assertArrayEquals(expected, dst.toArray(ValueLayout.JAVA_BYTE));
+
+            MemorySegments.decrypt(mode(), dst, dst);
+            assertArrayEquals(plaintext, dst.toArray(ValueLayout.JAVA_BYTE));
+        }
+    }
+
+    @Test
+    @Order(2)
+    void inPlaceRangeTest() {
+        byte[] plaintext = source(3000);
+        byte[] expected = plaintext.clone();
+        CTRMode reference = mode();
+        reference.seek(100L);
+        reference.encrypt(expected, 100, 2500, expected, 100);
+
+        MemorySegment segment = MemorySegment.ofArray(plaintext.clone());
+        CTRMode mode = mode();
+        mode.seek(100L);
+        MemorySegments.process(mode, segment, 100, 2500);
+        assertArrayEquals(expected, segment.toArray(ValueLayout.JAVA_BYTE));
+    }
+
+    @Test
+    @Order(3)
+    void invalidArgumentsTest() {
+        MemorySegment partial = MemorySegment.ofArray(new byte[25]);
+        assertThrows(IllegalArgumentException.class, () -> MemorySegments.encrypt(cipher(), partial, partial));
+
+        MemorySegment src = MemorySegment.ofArray(new byte[48]);
+        MemorySegment small = MemorySegment.ofArray(new byte[24]);
+        assertThrows(IndexOutOfBoundsException.class, () -> MemorySegments.encrypt(cipher(), src, small));
+        assertThrows(IndexOutOfBoundsException.class, () -> MemorySegments.encrypt(mode(), src, small));
+    }
+}
@@ -0,0 +1,324 @@
+package uk.ac.nottingham.cryptography;
+
+import java.util.Arrays;
+
+import static uk.ac.nottingham.cryptography.CASTCipher.S1;
+import static uk.ac.nottingham.cryptography.CASTCipher.S2;
+import static uk.ac.nottingham.cryptography.CASTCipher.S3;
+import static uk.ac.nottingham.cryptography.CASTCipher.S4;
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.INT_BE;
+import static uk.ac.nottingham.cryptography.ScalarEngine.ROUND_KEYS;
+
+/**
+ * Table-free CAST-384 engine that evaluates 64 blocks at once as boolean circuits.
+ * <p>
+ * How it works:
+ * The blocks are transposed into bit-planes: plane j of word w is a long whose bit l
+ * is bit j of word w in block l, so every AND, OR and XOR on a plane acts on all 64
+ * blocks together. Since all blocks share one key:
+ *   - the masking key is a constant operand, so d + Km, d ^ Km and Km - d become
+ *     ripple-carry circuits with one operand fixed
+ *   - the rotation by Kr is a five-stage barrel shifter over the 32 planes: stage b
+ *     moves every plane by 2^b positions or leaves it, chosen with a mask built from
+ *     bit b of Kr, so no plane index depends on the key
+ *   - each S-box becomes a decoder that turns its 8 input planes into 256 minterm
+ *     planes (all ones in the lanes holding that byte), and every output bit is the
+ *     OR of the minterms whose S-box entry has that bit set
+ *   - the +, - and ^ that combine the S-box outputs are ripple-carry adders or XORs
+ *     over the 32 planes
+ * No memory address or branch depends on the data or the key, so the timing is
+ * independent of both. The circuits cost far more work per block than the table
+ * lookups, so this engine is for callers that need that property, such as CTR
+ * keystream, rather than for raw speed. A partial group is padded with zero blocks,
+ * so a call always costs a multiple of 64 blocks.
+ */
+final class BitslicedEngine implements BlockEngine {
+
+    static final int LANES = 64;                 // One block per bit of a long
+
+    private static final int WORDS = 6;
+    private static final int PLANES = WORDS * 32;
+
+    // Word indices of A .. F in the state
+    private static final int A = 0, B = 1, C = 2, D = 3, E = 4, F = 5;
+
+    // Operations of the F-functions, see CAST384.f1 .. f6
+    private static final int ADD = 0, SUB = 1, XOR = 2;
+    // Per function: the key operation (SUB meaning Km - d), then the three S-box combiners
+    private static final int[][] OPS = {
+            { ADD, XOR, SUB, ADD },     // f1
+            { XOR, SUB, ADD, XOR },     // f2
+            { SUB, ADD, XOR, SUB },     // f3
+            { SUB, XOR, ADD, SUB },     // f4
+            { ADD, SUB, XOR, ADD },     // f5
+            { XOR, ADD, SUB, XOR },     // f6
+    };
+
+    // TERMS[box][bit] lists the S-box inputs whose output has that bit set
+    private static final int[][][] TERMS = { terms(S1), terms(S2), terms(S3), terms(S4) };
+
+    // Working planes, per thread because one engine may be shared between threads
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int[] km;
+    private final int[] kr;
+
+    /**
+     * @param Km 72 round masking keys
+     * @param Kr 72 round rotation keys
+     */
+    BitslicedEngine(int[] Km, int[] Kr) {
+        if (Km.length != ROUND_KEYS || Kr.length != ROUND_KEYS) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+        this.km = Km;
+        this.kr = Kr;
+    }
+
+    @Override
+    public int parallelBlocks() {
+        return LANES;
+    }
+
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        Scratch scratch = SCRATCH.get();
+        for (int done = 0; done < blockCount; done += LANES) {
+            int n = Math.min(LANES, blockCount - done);
+            long[] s = scratch.state;
+            load(in, inOff + done * BLOCK_BYTES, n, s);
+            for (int k = 0; k < 36; k += 6) {
+                hexad(s, k, scratch);       // Rounds 0 to 5
+            }
+            for (int k = 36; k < 72; k += 6) {
+                hexadInv(s, k, scratch);    // Rounds 6 to 11
+            }
+            store(out, outOff + done * BLOCK_BYTES, n, s);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        Scratch scratch = SCRATCH.get();
+        for (int done = 0; done < blockCount; done += LANES) {
+            int n = Math.min(LANES, blockCount - done);
+            long[] s = scratch.state;
+            load(in, inOff + done * BLOCK_BYTES, n, s);
+            for (int k = 66; k >= 36; k -= 6) {
+                hexad(s, k, scratch);       // Rounds 11 to 6
+            }
+            for (int k = 30; k >= 0; k -= 6) {
+                hexadInv(s, k, scratch);    // Rounds 5 to 0
+            }
+            store(out, outOff + done * BLOCK_BYTES, n, s);
+        }
+    }
+
+    private void hexad(long[] s, int k, Scratch scratch) {
+        f(0, s, F, E, k, scratch);
+        f(1, s, E, D, k + 1, scratch);
+        f(2, s, D, C, k + 2, scratch);
+        f(3, s, C, B, k + 3, scratch);
+        f(4, s, B, A, k + 4, scratch);
+        f(5, s, A, F, k + 5, scratch);
+    }
+
+    private void hexadInv(long[] s, int k, Scratch scratch) {
+        f(5, s, A, F, k + 5, scratch);
+        f(4, s, B, A, k + 4, scratch);
+        f(3, s, C, B, k + 3, scratch);
+        f(2, s, D, C, k + 2, scratch);
+        f(1, s, E, D, k + 1, scratch);
+        f(0, s, F, E, k, scratch);
+    }
+
+    /**
+     * Applies F-function fn to word src and XORs the result into word dst, for all
+     * 64 lanes.
+     */
+    private void f(int fn, long[] s, int src, int dst, int k, Scratch scratch) {
+        final int[] ops = OPS[fn];
+        final long[] tmp = scratch.tmp;
+        final long[] acc = scratch.acc;
+        final long[] box = scratch.box;
+        final int m = km[k];
+        final int r = kr[k] & 31;
+
+        // acc = d op Km, one plane per bit
+        final int base = src * 32;
+        long carry = ops[0] == SUB ? -1L : 0L;     // Km - d is Km + ~d + 1
+        for (int j = 0; j < 32; j++) {
+            long x = s[base + j];
+            long kb = -(long) ((m >>> j) & 1);
+            long v;
+            if (ops[0] == XOR) {
+                v = x ^ kb;
+            } else {
+                if (ops[0] == SUB) {
+                    x = ~x;
+                }
+                v = x ^ kb ^ carry;
+                carry = (x & carry) | (kb & (x | carry));
+            }
+            acc[j] = v;
+        }
+
+        // tmp = rotateLeft(acc, Kr): bit j lands in plane (j + r) & 31. Each stage
+        // shifts by 2^b planes where bit b of r is set, selected by mask rather than by
+        // index, and the five stages alternate between acc and tmp, ending in tmp.
+        rotate(acc, tmp, 1, r & 1);
+        rotate(tmp, acc, 2, (r >>> 1) & 1);
+        rotate(acc, tmp, 4, (r >>> 2) & 1);
+        rotate(tmp, acc, 8, (r >>> 3) & 1);
+        rotate(acc, tmp, 16, (r >>> 4) & 1);
+
+        // S1 takes the top byte of tmp, S4 the bottom byte
+        sbox(TERMS[0], tmp, 24, scratch, acc);
+        sbox(TERMS[1], tmp, 16, scratch, box);
+        combine(acc, box, ops[1]);
+        sbox(TERMS[2], tmp, 8, scratch, box);
+        combine(acc, box, ops[2]);
+        sbox(TERMS[3], tmp, 0, scratch, box);
+        combine(acc, box, ops[3]);
+
+        final int out = dst * 32;
+        for (int j = 0; j < 32; j++) {
+            s[out + j] ^= acc[j];
+        }
+    }
+
+    /**
+     * out = in rotated by distance planes when bit is 1, otherwise a copy of in. Every
+     * plane is read and written either way.
+     */
+    private static void rotate(long[] in, long[] out, int distance, int bit) {
+        final long mask = -(long) bit;
+        for (int j = 0; j < 32; j++) {
+            out[j] = (in[j] & ~mask) | (in[(j - distance) & 31] & mask);
+        }
+    }
+
+    /**
+     * Evaluates one S-box on the byte held in planes shift .. shift + 7 of in.
+     */
+    private static void sbox(int[][] terms, long[] in, int shift, Scratch scratch, long[] out) {
+        final long[] lo = scratch.lo;
+        final long[] hi = scratch.hi;
+        final long[] minterms = scratch.minterms;
+
+        decode(in, shift, lo);
+        decode(in, shift + 4, hi);
+        for (int h = 0; h < 16; h++) {
+            long hv = hi[h];
+            for (int l = 0; l < 16; l++) {
+                minterms[(h << 4) | l] = hv & lo[l];
+            }
+        }
+
+        for (int j = 0; j < 32; j++) {
+            final int[] list = terms[j];
+            long o = 0L;
+            for (int t = 0; t < list.length; t++) {
+                o |= minterms[list[t]];
+            }
+            out[j] = o;
+        }
+    }
+
+    /**
+     * Expands the nibble in planes shift .. shift + 3 into its 16 minterms: entry i
+     * is all ones in exactly the lanes whose nibble equals i.
+     */
+    private static void decode(long[] in, int shift, long[] out) {
+        out[0] = -1L;
+        for (int t = 0, size = 1; t < 4; t++, size <<= 1) {
+            long x = in[shift + t];
+            for (int i = 0; i < size; i++) {
+                out[i + size] = out[i] & x;
+                out[i] &= ~x;
+            }
+        }
+    }
+
+    /**
+     * acc = acc op b over 32 planes.
+     */
+    private static void combine(long[] acc, long[] b, int op) {
+        if (op == XOR) {
+            for (int j = 0; j < 32; j++) {
+                acc[j] ^= b[j];
+            }
+            return;
+        }
+
+        long carry = op == SUB ? -1L : 0L;         // acc - b is acc + ~b + 1
+        for (int j = 0; j < 32; j++) {
+            long x = acc[j];
+            long y = op == SUB ? ~b[j] : b[j];
+            long t = x ^ y;
+            acc[j] = t ^ carry;
+            carry = (x & y) | (carry & t);
+        }
+    }
+
+    /**
+     * Transposes n blocks into the bit-planes of s; lanes n .. 63 are left zero.
+     */
+    private static void load(byte[] in, int off, int n, long[] s) {
+        Arrays.fill(s, 0L);
+        for (int l = 0; l < n; l++, off += BLOCK_BYTES) {
+            for (int w = 0; w < WORDS; w++) {
+                int v = (int) INT_BE.get(in, off + 4 * w);
+                for (int j = 0; j < 32; j++) {
+                    s[w * 32 + j] |= (long) ((v >>> j) & 1) << l;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transposes the first n lanes of s back into blocks.
+     */
+    private static void store(byte[] out, int off, int n, long[] s) {
+        for (int l = 0; l < n; l++, off += BLOCK_BYTES) {
+            for (int w = 0; w < WORDS; w++) {
+                int v = 0;
+                for (int j = 0; j < 32; j++) {
+                    v |= (int) ((s[w * 32 + j] >>> l) & 1) << j;
+                }
+                INT_BE.set(out, off + 4 * w, v);
+            }
+        }
+    }
+
+    private static int[][] terms(int[] sbox) {
+        int[][] terms = new int[32][];
+        for (int j = 0; j < 32; j++) {
+            int count = 0;
+            for (int i = 0; i < 256; i++) {
+                count += (sbox[i] >>> j) & 1;
+            }
+            terms[j] = new int[count];
+            for (int i = 0, t = 0; i < 256; i++) {
+                if (((sbox[i] >>> j) & 1) != 0) {
+                    terms[j][t++] = i;
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Working planes, allocated once per thread and reused for every group.
+     */
+    private static final class Scratch {
+        final long[] state = new long[PLANES];
+        final long[] tmp = new long[32];
+        final long[] acc = new long[32];
+        final long[] box = new long[32];
+        final long[] lo = new long[16];
+        final long[] hi = new long[16];
+        final long[] minterms = new long[256];
+    }
+}
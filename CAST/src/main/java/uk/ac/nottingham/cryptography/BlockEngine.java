@@ -0,0 +1,22 @@
+package uk.ac.nottingham.cryptography;
+
+/**
+ * A CAST-384 block transform bound to one expanded key.
+ * <br/>
+ * Engines read and write the big-endian block words directly from the caller's
+ * buffers and must not allocate per block. Buffer bounds are validated by the
+ * caller (see Cipher.checkBlocks) before an engine is invoked.
+ */
+interface BlockEngine {
+
+    void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount);
+
+    void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount);
+
+    /**
+     * @return the number of blocks the engine processes together
+     */
+    default int parallelBlocks() {
+        return 1;
+    }
+}
@@ -0,0 +1,50 @@
+package uk.ac.nottingham.cryptography;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * Argument checks and position updates shared by the ByteBuffer methods of Cipher,
+ * CipherMode and their subclasses.
+ */
+final class ByteBuffers {
+
+    private ByteBuffers() {
+    }
+
+    /**
+     * Validates the buffers of a ByteBuffer call and returns the number of bytes it
+     * covers (the remaining bytes of src).
+     *
+     * @param unit src must hold a multiple of this many bytes (the block size for a
+     *             cipher, 1 for a mode)
+     * @throws IllegalArgumentException if src does not hold a whole number of units
+     * @throws ReadOnlyBufferException  if dst is read-only
+     * @throws BufferOverflowException  if dst has less room than src has bytes
+     */
+    static int checkBuffers(ByteBuffer src, ByteBuffer dst, int unit) {
+        int len = src.remaining();
+        if (len % unit != 0) {
+            throw new IllegalArgumentException("Input must be a whole number of blocks");
+        }
+        if (dst.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        if (dst.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        return len;
+    }
+
+    /**
+     * Advances src and dst past len processed bytes, counting a buffer used as both
+     * source and destination only once.
+     */
+    static void advance(ByteBuffer src, ByteBuffer dst, int len) {
+        src.position(src.position() + len);
+        if (dst != src) {
+            dst.position(dst.position() + len);
+        }
+    }
+}
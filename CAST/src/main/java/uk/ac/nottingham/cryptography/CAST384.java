@@ -1,5 +1,17 @@
 package uk.ac.nottingham.cryptography;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static uk.ac.nottingham.cryptography.ByteBuffers.advance;
+import static uk.ac.nottingham.cryptography.ByteBuffers.checkBuffers;
+
 /**
  * Implementation of CASTCipher that encrypts and decrypts using the
  * CAST-384 algorithm.
@@ -7,14 +19,51 @@ package uk.ac.nottingham.cryptography;
  */
 public class CAST384 extends CASTCipher {
 
+    /**
+     * Memory layout of the S-boxes used by the block engine.
+     */
+    public enum SboxLayout {
+        /** The four separate CASTCipher.S1 .. S4 arrays (default). */
+        SPLIT,
+        /** One contiguous 4 KB int[] table indexed as box * 256 + byte. */
+        PACKED,
+        /** The packed table in a 64-byte aligned off-heap block. */
+        PACKED_DIRECT
+    }
+
     // The computed round keys are stored in the inherited field K (of type CASTKeySet)
     // which contains two arrays which is one for masking keys (Km) and one for rotation keys (Kr).
 
     private static final int BLOCK_WORDS = 6;    // 192-bit block => 6 x 32-bit words
+    private static final int BLOCK_BYTES = 24;     // 192-bit block => 24 bytes
     private static final int KEY_WORDS = 12;       // 384-bit key => 12 x 32-bit words
     private static final int ROUNDS = 12;          // 12 rounds
     private static final int DODECAD_COUNT = 4;    // 4 dodecad calls per round
 
+    private static final int DEFAULT_LANES = 4;    // Blocks interleaved by the bulk methods
+    private static final int STAGE_BLOCKS = 256;   // Word blocks staged per engine call (a multiple of 64)
+
+    private static final VarHandle INT_BE = ScalarEngine.INT_BE;
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // Key-independent Tm/Tr schedule (Algorithm 2), generated once and shared by every key.
+    // Never handed out: generateScheduleKeys returns fresh arrays.
+    static final CASTKeySet SCHEDULE = schedule(ROUNDS, DODECAD_COUNT);
+
+    private int lanes = DEFAULT_LANES;   // 1 = scalar engine, otherwise 2, 4 or 8 lanes
+    private boolean vectorized;          // Prefer the SIMD engine when it is available
+    private boolean bitsliced;           // Use the table-free engine
+    private boolean autoTuned;           // Choose the engine per call (see EngineRegistry)
+    private SboxLayout layout = SboxLayout.SPLIT;
+    private BlockEngine engine;       // Block engine bound to engineKeys
+    private ScalarEngine scalar;      // Scalar engine for engineKeys, used for direct buffers
+    private CASTKeySet engineKeys;    // The round keys the engine was built from
+    private boolean compiled;         // engine embeds the keys as constants (see compileKey)
+    private BlockEngine[] tuned;      // Auto-tuned engine per size class for engineKeys
+
+    private boolean ownsKeys;         // K was allocated here, so rekey may overwrite it
+    private final int[] kappa = new int[KEY_WORDS];   // Working key block for rekey
+
     /**
      * Default constructor.
      * Calls the parent constructor with key size of 192 bits (block) and 384 bits (key).
@@ -39,14 +88,110 @@ public class CAST384 extends CASTCipher {
         int len = Math.min(key.length, 48);
         System.arraycopy(key, 0, paddedKey, 0, len);
 
-        // Generate temporary key schedule keys Tm and Tr (Algorithm 2)
-        CASTKeySet tempSchedule = generateScheduleKeys(ROUNDS, DODECAD_COUNT);
+        // Temporary key schedule keys Tm and Tr (Algorithm 2) are the shared SCHEDULE
 
         // Generate round keys using the dodecad function (Algorithm 1)
-        CASTKeySet roundKeys = generateRoundKeys(tempSchedule, paddedKey, ROUNDS, DODECAD_COUNT);
+        CASTKeySet roundKeys = generateRoundKeys(SCHEDULE, paddedKey, ROUNDS, DODECAD_COUNT);
 
         // Store the computed round keys in the inherited field K.
         this.K = roundKeys;
+        this.ownsKeys = true;
+    }
+
+    /**
+     * Replaces the key without allocating, for callers that rekey per message.
+     * How it works:
+     * Up to 48 bytes of key[off .. off + len) are loaded into a reusable working block
+     * (zero-padded like initialise) and expanded with the shared Tm/Tr schedule straight
+     * into the existing Km/Kr arrays. The block engines read those arrays, so they pick
+     * up the new key without being rebuilt; a compiled key (see compileKey) embeds the
+     * old key and is dropped in favour of the normal engine. Arrays obtained earlier
+     * through getK() are overwritten too. Only the first call after construction or
+     * setRoundKeys allocates the arrays.
+     *
+     * @param key array holding the key
+     * @param off offset of the first key byte
+     * @param len number of key bytes
+     */
+    public void rekey(byte[] key, int off, int len) {
+        Objects.checkFromIndexSize(off, len, key.length);
+
+        CASTKeySet keys = ownedKeys();
+
+        final int[] kappa = this.kappa;
+        int n = Math.min(len, 48);
+        for (int i = 0; i < KEY_WORDS; i++) {
+            int word = 0;
+            for (int b = 0; b < 4; b++) {
+                int index = i * 4 + b;
+                word = (word << 8) | (index < n ? key[off + index] & 0xFF : 0);
+            }
+            kappa[i] = word;
+        }
+        expandRoundKeys(kappa, SCHEDULE, keys.getM(), keys.getR(), ROUNDS, DODECAD_COUNT);
+        Arrays.fill(kappa, 0);
+        installOwned(keys);
+    }
+
+    /**
+     * Keys this cipher with an expanded key, copying its round keys into this cipher's
+     * own arrays as rekey does; the shared key itself is never modified.
+     *
+     * @param key the expanded key
+     */
+    public void initialise(CAST384Key key) {
+        key.loadInto(this);
+    }
+
+    /**
+     * Copies expanded round keys into this cipher's own arrays, with the same engine
+     * handling as rekey. Used by KeyCache so the cached arrays are never shared.
+     *
+     * @param Km 72 masking keys
+     * @param Kr 72 rotation keys
+     */
+    void loadRoundKeys(int[] Km, int[] Kr) {
+        CASTKeySet keys = ownedKeys();
+        System.arraycopy(Km, 0, keys.getM(), 0, ROUNDS * 6);
+        System.arraycopy(Kr, 0, keys.getR(), 0, ROUNDS * 6);
+        installOwned(keys);
+    }
+
+    /**
+     * Returns K if this cipher may overwrite it, otherwise new round key arrays. Code
+     * that fills the arrays itself (KeyRing) pairs this with installOwned.
+     */
+    CASTKeySet ownedKeys() {
+        CASTKeySet keys = K;
+        if (keys == null || !ownsKeys) {
+            keys = new CASTKeySet(new int[ROUNDS * 6], new int[ROUNDS * 6]);
+        }
+        return keys;
+    }
+
+    /**
+     * Makes keys (from ownedKeys, already filled in) the current round keys.
+     */
+    void installOwned(CASTKeySet keys) {
+        if (compiled) {
+            engineKeys = null;  // The compiled engine embeds the old keys
+        }
+        K = keys;
+        ownsKeys = true;
+    }
+
+    /**
+     * Installs round keys that were expanded earlier, e.g. by KeyBatch, in place of
+     * initialise. The arrays are used directly, not copied.
+     *
+     * @param keys 72 masking and 72 rotation keys
+     */
+    public void setRoundKeys(CASTKeySet keys) {
+        if (keys.getM().length != ROUNDS * 6 || keys.getR().length != ROUNDS * 6) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+        this.K = keys;
+        this.ownsKeys = false;
     }
 
     /**
@@ -69,6 +214,10 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public CASTKeySet generateScheduleKeys(int roundCount, int dodecadCount) {
+        return schedule(roundCount, dodecadCount);
+    }
+
+    private static CASTKeySet schedule(int roundCount, int dodecadCount) {
         int total = roundCount * dodecadCount;  // Total number of dodecad iterations (e.g. 12×4 = 48)
         int len = total * KEY_WORDS;            // Total values = 48 × 12 = 576 entries per array
 
@@ -133,6 +282,23 @@ public class CAST384 extends CASTCipher {
         // Each round produces 6 masking keys (Km) and 6 rotation keys (Kr).
         int[] Km = new int[roundCount * 6];
         int[] Kr = new int[roundCount * 6];
+        expandRoundKeys(kappa, T, Km, Kr, roundCount, dodecadCount);
+
+        return new CASTKeySet(Km, Kr);
+    }
+
+    /**
+     * Runs the key mixing of Algorithm 1 on κ and writes the round keys into Km and Kr.
+     * Shared by generateRoundKeys and rekey.
+     *
+     * @param kappa         the 12-word key block κ, mixed in place
+     * @param T             temporary key material Tm and Tr
+     * @param Km            receives the roundCount × 6 masking keys
+     * @param Kr            receives the roundCount × 6 rotation keys
+     * @param roundCount    Number of rounds (fixed at 12).
+     * @param dodecadCount  Number of dodecad calls per round (fixed at 4).
+     */
+    private void expandRoundKeys(int[] kappa, CASTKeySet T, int[] Km, int[] Kr, int roundCount, int dodecadCount) {
         // For each round, apply the dodecad function multiple times, then extract keys.
         for (int i = 0; i < roundCount; i++) {
             for (int d = 0; d < dodecadCount; d++) {
@@ -158,8 +324,6 @@ public class CAST384 extends CASTCipher {
             Kr[baseRK + 4] = kappa[8]  & 0x1F; // I mod 32
             Kr[baseRK + 5] = kappa[10] & 0x1F; // K mod 32
         }
-
-        return new CASTKeySet(Km, Kr);
     }
     /**
      * Applies the dodecad function to a 12-word key block (κ), used in the key schedule phase.
@@ -279,21 +443,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public void encrypt(byte[] data) {
-        int[] block = bytesToBlock(data);
-        int[] Km = K.getM();
-        int[] Kr = K.getR();
-
-        // Apply forward hexad rounds (0 to 5)
-        for (int i = 0; i < 6; i++) {
-            hexad(block, Km, Kr, i * 6);
-        }
-
-        // Apply inverse hexad rounds (6 to 11)
-        for (int i = 6; i < 12; i++) {
-            hexadInv(block, Km, Kr, i * 6);
-        }
-
-        blockToBytes(block, data);
+        encryptBlocks(data, 0, data, 0, 1);
     }
 
     /**
@@ -309,21 +459,492 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public void decrypt(byte[] data) {
-        int[] block = bytesToBlock(data);
-        int[] Km = K.getM();
-        int[] Kr = K.getR();
+        decryptBlocks(data, 0, data, 0, 1);
+    }
+
+    /**
+     * Encrypts blockCount consecutive 192-bit blocks.
+     * How it works:
+     * Each block is read as six big-endian words straight from the input buffer at its
+     * offset, run through the 12 rounds and written back at the output offset. The
+     * rounds are executed by an engine bound to the current round keys (see setLanes),
+     * which allocates nothing per block.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first plaintext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first ciphertext block
+     * @param blockCount number of 24-byte blocks to encrypt
+     */
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        checkBlocks(in, inOff, out, outOff, blockCount);
+        engine(blockCount).encryptBlocks(in, inOff, out, outOff, blockCount);
+    }
+
+    /**
+     * Decrypts blockCount consecutive 192-bit blocks.
+     * How it works:
+     * Mirrors encryptBlocks, running the rounds in reverse order on each block.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first ciphertext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first plaintext block
+     * @param blockCount number of 24-byte blocks to decrypt
+     */
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        checkBlocks(in, inOff, out, outOff, blockCount);
+        engine(blockCount).decryptBlocks(in, inOff, out, outOff, blockCount);
+    }
+
+    /**
+     * Encrypts the remaining bytes of src into dst (a whole number of blocks).
+     * How it works:
+     * Heap buffers go through encryptBlocks on their backing arrays. Direct buffers are
+     * read and written word by word in place through a big-endian ByteBuffer view, so no
+     * intermediate array is needed. src == dst encrypts in place.
+     *
+     * @param src buffer holding the plaintext between its position and limit
+     * @param dst buffer receiving the ciphertext at its position
+     */
+    @Override
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        int len = checkBuffers(src, dst, BLOCK_BYTES);
+        if (src.hasArray() && dst.hasArray()) {
+            encryptBlocks(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), len / BLOCK_BYTES);
+        } else if (bitsliced) {
+            super.encrypt(src, dst);     // Stage through the table-free engine
+            return;
+        } else {
+            scalarEngine().encryptBlocks(src, src.position(), dst, dst.position(), len / BLOCK_BYTES);
+        }
+        advance(src, dst, len);
+    }
 
-        // Inverse hexad rounds (Rounds 11 to 6)
-        for (int i = 11; i >= 6; i--) {
-            hexad(block, Km, Kr, i * 6);
+    /**
+     * Decrypts the remaining bytes of src into dst (a whole number of blocks).
+     * How it works:
+     * Mirrors encrypt(ByteBuffer, ByteBuffer).
+     *
+     * @param src buffer holding the ciphertext between its position and limit
+     * @param dst buffer receiving the plaintext at its position
+     */
+    @Override
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        int len = checkBuffers(src, dst, BLOCK_BYTES);
+        if (src.hasArray() && dst.hasArray()) {
+            decryptBlocks(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), len / BLOCK_BYTES);
+        } else if (bitsliced) {
+            super.decrypt(src, dst);     // Stage through the table-free engine
+            return;
+        } else {
+            scalarEngine().decryptBlocks(src, src.position(), dst, dst.position(), len / BLOCK_BYTES);
         }
+        advance(src, dst, len);
+    }
 
-        // Forward hexad rounds (Rounds 5 to 0)
-        for (int i = 5; i >= 0; i--) {
-            hexadInv(block, Km, Kr, i * 6);
+    /**
+     * Encrypts blockCount blocks given as 32-bit words, in place.
+     * How it works:
+     * Block n is the six words words[off + 6n] .. words[off + 6n + 5] in the order
+     * A..F, i.e. the big-endian words encrypt(byte[]) would read. The blocks go through
+     * the same engine as encryptBlocks, so the lanes, SIMD, S-box layout, bitsliced and
+     * compiled-key settings all apply. With 1 lane and no other setting the rounds run
+     * directly on the words; any other engine works on bytes, so the blocks are staged
+     * through a byte buffer in chunks.
+     *
+     * @param words      array holding the blocks
+     * @param off        index of the first word
+     * @param blockCount number of blocks to encrypt
+     */
+    public void encryptWords(int[] words, int off, int blockCount) {
+        checkWords(words.length, off, blockCount, BLOCK_WORDS);
+        BlockEngine engine = engine(blockCount);
+        if (engine == scalar) {
+            scalar.encryptWords(words, off, blockCount);
+        } else {
+            stage(engine, words, off, null, blockCount, true);
         }
+    }
 
-        blockToBytes(block, data);
+    /**
+     * Decrypts blockCount blocks given as 32-bit words, in place.
+     * Mirrors encryptWords(int[], int, int).
+     *
+     * @param words      array holding the blocks
+     * @param off        index of the first word
+     * @param blockCount number of blocks to decrypt
+     */
+    public void decryptWords(int[] words, int off, int blockCount) {
+        checkWords(words.length, off, blockCount, BLOCK_WORDS);
+        BlockEngine engine = engine(blockCount);
+        if (engine == scalar) {
+            scalar.decryptWords(words, off, blockCount);
+        } else {
+            stage(engine, words, off, null, blockCount, false);
+        }
+    }
+
+    /**
+     * Encrypts blockCount blocks given as 64-bit words, in place.
+     * How it works:
+     * Block n is the three longs words[off + 3n] .. words[off + 3n + 2]; each long holds
+     * two block words with the earlier one in its high half, so A is the top of the
+     * first long and F the bottom of the third. This matches reading the 24-byte block
+     * as three big-endian longs. The engine is chosen as for encryptWords(int[], int, int).
+     *
+     * @param words      array holding the blocks
+     * @param off        index of the first long
+     * @param blockCount number of blocks to encrypt
+     */
+    public void encryptWords(long[] words, int off, int blockCount) {
+        checkWords(words.length, off, blockCount, BLOCK_WORDS / 2);
+        BlockEngine engine = engine(blockCount);
+        if (engine == scalar) {
+            scalar.encryptWords(words, off, blockCount);
+        } else {
+            stage(engine, null, off, words, blockCount, true);
+        }
+    }
+
+    /**
+     * Decrypts blockCount blocks given as 64-bit words, in place.
+     * Mirrors encryptWords(long[], int, int).
+     *
+     * @param words      array holding the blocks
+     * @param off        index of the first long
+     * @param blockCount number of blocks to decrypt
+     */
+    public void decryptWords(long[] words, int off, int blockCount) {
+        checkWords(words.length, off, blockCount, BLOCK_WORDS / 2);
+        BlockEngine engine = engine(blockCount);
+        if (engine == scalar) {
+            scalar.decryptWords(words, off, blockCount);
+        } else {
+            stage(engine, null, off, words, blockCount, false);
+        }
+    }
+
+    /**
+     * Encrypts count blocks stored as six parallel word columns, in place.
+     * How it works:
+     * Block i is (a[i], b[i], c[i], d[i], e[i], f[i]) for off <= i < off + count, so
+     * six numeric columns can be encrypted row by row without being interleaved first.
+     * The engine is chosen as for encryptWords(int[], int, int).
+     *
+     * @param a     column of A words
+     * @param b     column of B words
+     * @param c     column of C words
+     * @param d     column of D words
+     * @param e     column of E words
+     * @param f     column of F words
+     * @param off   first row to encrypt
+     * @param count number of rows to encrypt
+     */
+    public void encryptColumns(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int off, int count) {
+        checkColumns(a, b, c, d, e, f, off, count);
+        BlockEngine engine = engine(count);
+        if (engine == scalar) {
+            scalar.encryptColumns(a, b, c, d, e, f, off, count);
+        } else {
+            stageColumns(engine, new int[][] { a, b, c, d, e, f }, off, count, true);
+        }
+    }
+
+    /**
+     * Decrypts count blocks stored as six parallel word columns, in place.
+     * Mirrors encryptColumns.
+     *
+     * @param a     column of A words
+     * @param b     column of B words
+     * @param c     column of C words
+     * @param d     column of D words
+     * @param e     column of E words
+     * @param f     column of F words
+     * @param off   first row to decrypt
+     * @param count number of rows to decrypt
+     */
+    public void decryptColumns(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int off, int count) {
+        checkColumns(a, b, c, d, e, f, off, count);
+        BlockEngine engine = engine(count);
+        if (engine == scalar) {
+            scalar.decryptColumns(a, b, c, d, e, f, off, count);
+        } else {
+            stageColumns(engine, new int[][] { a, b, c, d, e, f }, off, count, false);
+        }
+    }
+
+    /**
+     * Runs word blocks through an engine that works on bytes: up to STAGE_BLOCKS blocks
+     * at a time are written big-endian into a chunk, processed there in place and read
+     * back. Exactly one of ints and longs is non-null.
+     */
+    private static void stage(BlockEngine engine, int[] ints, int off, long[] longs, int blockCount,
+                              boolean forward) {
+        byte[] chunk = new byte[Math.min(blockCount, STAGE_BLOCKS) * BLOCK_BYTES];
+        for (int done = 0; done < blockCount; ) {
+            int n = Math.min(blockCount - done, STAGE_BLOCKS);
+            int len = n * BLOCK_BYTES;
+            if (ints != null) {
+                int w = off + done * BLOCK_WORDS;
+                for (int i = 0; i < len; i += 4) {
+                    INT_BE.set(chunk, i, ints[w + i / 4]);
+                }
+            } else {
+                int w = off + done * (BLOCK_WORDS / 2);
+                for (int i = 0; i < len; i += 8) {
+                    LONG_BE.set(chunk, i, longs[w + i / 8]);
+                }
+            }
+
+            run(engine, chunk, n, forward);
+
+            if (ints != null) {
+                int w = off + done * BLOCK_WORDS;
+                for (int i = 0; i < len; i += 4) {
+                    ints[w + i / 4] = (int) INT_BE.get(chunk, i);
+                }
+            } else {
+                int w = off + done * (BLOCK_WORDS / 2);
+                for (int i = 0; i < len; i += 8) {
+                    longs[w + i / 8] = (long) LONG_BE.get(chunk, i);
+                }
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * As stage, for blocks held in six parallel columns.
+     */
+    private static void stageColumns(BlockEngine engine, int[][] columns, int off, int count, boolean forward) {
+        byte[] chunk = new byte[Math.min(count, STAGE_BLOCKS) * BLOCK_BYTES];
+        for (int done = 0; done < count; ) {
+            int n = Math.min(count - done, STAGE_BLOCKS);
+            for (int j = 0; j < BLOCK_WORDS; j++) {
+                int[] column = columns[j];
+                for (int r = 0; r < n; r++) {
+                    INT_BE.set(chunk, r * BLOCK_BYTES + 4 * j, column[off + done + r]);
+                }
+            }
+
+            run(engine, chunk, n, forward);
+
+            for (int j = 0; j < BLOCK_WORDS; j++) {
+                int[] column = columns[j];
+                for (int r = 0; r < n; r++) {
+                    column[off + done + r] = (int) INT_BE.get(chunk, r * BLOCK_BYTES + 4 * j);
+                }
+            }
+            done += n;
+        }
+    }
+
+    private static void run(BlockEngine engine, byte[] chunk, int blockCount, boolean forward) {
+        if (forward) {
+            engine.encryptBlocks(chunk, 0, chunk, 0, blockCount);
+        } else {
+            engine.decryptBlocks(chunk, 0, chunk, 0, blockCount);
+        }
+    }
+
+    private static void checkWords(int length, int off, int blockCount, int wordsPerBlock) {
+        if (blockCount < 0) {
+            throw new IllegalArgumentException("Block count must not be negative");
+        }
+        Objects.checkFromIndexSize(off, Math.multiplyExact(blockCount, wordsPerBlock), length);
+    }
+
+    private static void checkColumns(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int off, int count) {
+        for (int[] column : new int[][] { a, b, c, d, e, f }) {
+            checkWords(column.length, off, count, 1);
+        }
+    }
+
+    /**
+     * Selects how many independent blocks the bulk methods process in lockstep.
+     * How it works:
+     * With 1 lane every block runs through ScalarEngine on its own. With 2, 4 or 8
+     * lanes an InterleavedEngine applies each hexad step to a whole group of blocks
+     * before moving on, letting the CPU overlap their S-box lookups. The best value
+     * depends on the CPU; run the benchmark task to compare them. The setting is
+     * ignored while the SIMD engine is in use (see setVectorized).
+     *
+     * @param lanes 1, 2, 4 or 8
+     */
+    public void setLanes(int lanes) {
+        if (lanes != 1 && lanes != 2 && lanes != 4 && lanes != 8) {
+            throw new IllegalArgumentException("Lane count must be 1, 2, 4 or 8");
+        }
+        this.lanes = lanes;
+        this.engineKeys = null;  // Rebuild the engine on next use
+    }
+
+    /**
+     * Requests the SIMD engine for the bulk methods.
+     * How it works:
+     * The VectorEngine evaluates each F-function across a whole vector of blocks using
+     * the jdk.incubator.vector module. If the JVM was not started with that module the
+     * request has no effect and the lane setting is used instead.
+     *
+     * @param vectorized true to use the SIMD engine when available
+     * @return true if the SIMD engine will be used
+     */
+    public boolean setVectorized(boolean vectorized) {
+        this.vectorized = vectorized;
+        this.engineKeys = null;  // Rebuild the engine on next use
+        return isVectorized();
+    }
+
+    /**
+     * @return true if the bulk methods run on the SIMD engine
+     */
+    public boolean isVectorized() {
+        return vectorized && VectorEngines.isAvailable();
+    }
+
+    /**
+     * Selects the table-free bitsliced engine for the bulk methods.
+     * How it works:
+     * The BitslicedEngine evaluates 64 blocks at a time as boolean circuits, so no
+     * memory access depends on the key or data. It is much slower per block than the
+     * table engines and pads every call to a multiple of 64 blocks, so it suits bulk
+     * work such as CTR keystream, which reads getParallelBlocks to size its batches.
+     * When set it takes precedence over the SIMD, layout and lane settings, and direct
+     * buffers are staged through it instead of using the scalar engine.
+     *
+     * @param bitsliced true to use the bitsliced engine
+     */
+    public void setBitsliced(boolean bitsliced) {
+        this.bitsliced = bitsliced;
+        this.engineKeys = null;  // Rebuild the engine on next use
+    }
+
+    /**
+     * @return the number of blocks the current engine processes together
+     */
+    @Override
+    public int getParallelBlocks() {
+        return K == null ? 1 : engine(Integer.MAX_VALUE).parallelBlocks();
+    }
+
+    /**
+     * Lets the EngineRegistry choose the engine for each call.
+     * How it works:
+     * The registry calibrates the engines once per JVM (or reads its system property)
+     * and names the fastest for a single block, a few blocks and bulk calls. When
+     * auto-tuning is on, encryptBlocks and decryptBlocks use the engine chosen for the
+     * size of the call, in place of the SIMD, bitsliced, layout and lane settings. A
+     * compiled key (see compileKey) still takes precedence.
+     *
+     * @param autoTuned true to choose the engine by call size
+     */
+    public void setAutoTuned(boolean autoTuned) {
+        this.autoTuned = autoTuned;
+        this.engineKeys = null;  // Rebuild the engine on next use
+    }
+
+    /**
+     * Selects the S-box memory layout for the block engine.
+     * How it works:
+     * SPLIT reads the four 1 KB S-box arrays of CASTCipher. PACKED and PACKED_DIRECT
+     * run a single-lane engine over one contiguous 4 KB table (on-heap, or off-heap and
+     * 64-byte aligned), which keeps the tables in fewer cache lines when other hot data
+     * competes for L1. A packed layout takes precedence over the lane setting; the SIMD
+     * engine, when enabled, always gathers from the split tables.
+     *
+     * @param layout the S-box layout to use
+     */
+    public void setSboxLayout(SboxLayout layout) {
+        this.layout = Objects.requireNonNull(layout);
+        this.engineKeys = null;  // Rebuild the engine on next use
+    }
+
+    /**
+     * Specialises the cipher for its current key.
+     * How it works:
+     * A hidden class is generated with the 72 masking and rotation keys embedded as
+     * constants (see CompiledKeys), and all block operations use it one block at a
+     * time. The compiled engine is dropped, and the usual one rebuilt, by the next
+     * call to initialise, setRoundKeys, setLanes, setVectorized, setBitsliced,
+     * setSboxLayout or setAutoTuned. Generating the class is expensive, so this
+     * should only be used for long-lived keys that will encrypt a large amount of data.
+     *
+     * @throws IllegalStateException if the cipher has not been initialised
+     */
+    public void compileKey() {
+        CASTKeySet keys = K;
+        if (keys == null) {
+            throw new IllegalStateException("CAST-384 has not been initialised");
+        }
+        engine = CompiledKeys.compile(keys.getM(), keys.getR());
+        compiled = true;
+        scalar = new ScalarEngine(keys.getM(), keys.getR());
+        engineKeys = keys;
+    }
+
+    /**
+     * Returns the block engine for the current round keys, rebinding it whenever K
+     * has been replaced since the engine was built.
+     */
+    private BlockEngine engine() {
+        CASTKeySet keys = K;
+        if (keys != engineKeys) {
+            scalar = new ScalarEngine(keys.getM(), keys.getR());
+            if (bitsliced) {
+                engine = new BitslicedEngine(keys.getM(), keys.getR());
+            } else if (isVectorized()) {
+                engine = VectorEngines.create(keys.getM(), keys.getR());
+            } else if (layout == SboxLayout.PACKED) {
+                engine = new PackedSboxEngine(keys.getM(), keys.getR());
+            } else if (layout == SboxLayout.PACKED_DIRECT) {
+                engine = new DirectSboxEngine(keys.getM(), keys.getR());
+            } else if (lanes == 1) {
+                engine = scalar;
+            } else {
+                engine = new InterleavedEngine(keys.getM(), keys.getR(), lanes);
+            }
+            engineKeys = keys;
+            compiled = false;
+            tuned = null;
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the engine for a call of blockCount blocks: the auto-tuned choice for
+     * that size when enabled, otherwise the engine from engine().
+     */
+    private BlockEngine engine(int blockCount) {
+        BlockEngine fixed = engine();
+        if (!autoTuned || compiled) {
+            return fixed;
+        }
+        BlockEngine[] t = tuned;
+        if (t == null) {
+            CASTKeySet keys = engineKeys;
+            EngineRegistry.SizeClass[] sizes = EngineRegistry.SizeClass.values();
+            Map<EngineRegistry.Engine, BlockEngine> built = new EnumMap<>(EngineRegistry.Engine.class);
+            t = new BlockEngine[sizes.length];
+            for (EngineRegistry.SizeClass size : sizes) {
+                t[size.ordinal()] = built.computeIfAbsent(EngineRegistry.selected(size),
+                        e -> e.create(keys.getM(), keys.getR()));
+            }
+            tuned = t;
+        }
+        return t[EngineRegistry.SizeClass.of(blockCount).ordinal()];
+    }
+
+    /**
+     * Returns the scalar engine for the current round keys.
+     */
+    private ScalarEngine scalarEngine() {
+        engine();
+        return scalar;
     }
 
 
@@ -340,12 +961,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public int f1(int d, int Km, int Kr) {
-        int tmp = Integer.rotateLeft(d + Km, Kr);
-        int b0 = (tmp >>> 24) & 0xFF;
-        int b1 = (tmp >>> 16) & 0xFF;
-        int b2 = (tmp >>> 8) & 0xFF;
-        int b3 = tmp & 0xFF;
-        return ((S1[b0] ^ S2[b1]) - S3[b2]) + S4[b3];
+        return ScalarEngine.f1(d, Km, Kr);
     }
 
     /**
@@ -359,12 +975,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public int f2(int d, int Km, int Kr) {
-        int tmp = Integer.rotateLeft(d ^ Km, Kr);
-        int b0 = (tmp >>> 24) & 0xFF;
-        int b1 = (tmp >>> 16) & 0xFF;
-        int b2 = (tmp >>> 8) & 0xFF;
-        int b3 = tmp & 0xFF;
-        return ((S1[b0] - S2[b1]) + S3[b2]) ^ S4[b3];
+        return ScalarEngine.f2(d, Km, Kr);
     }
 
     /**
@@ -378,12 +989,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public int f3(int d, int Km, int Kr) {
-        int tmp = Integer.rotateLeft(Km - d, Kr);
-        int b0 = (tmp >>> 24) & 0xFF;
-        int b1 = (tmp >>> 16) & 0xFF;
-        int b2 = (tmp >>> 8) & 0xFF;
-        int b3 = tmp & 0xFF;
-        return ((S1[b0] + S2[b1]) ^ S3[b2]) - S4[b3];
+        return ScalarEngine.f3(d, Km, Kr);
     }
 
     /**
@@ -397,12 +1003,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public int f4(int d, int Km, int Kr) {
-        int tmp = Integer.rotateLeft(Km - d, Kr);
-        int b0 = (tmp >>> 24) & 0xFF;
-        int b1 = (tmp >>> 16) & 0xFF;
-        int b2 = (tmp >>> 8) & 0xFF;
-        int b3 = tmp & 0xFF;
-        return ((S1[b0] ^ S2[b1]) + S3[b2]) - S4[b3];
+        return ScalarEngine.f4(d, Km, Kr);
     }
 
     /**
@@ -416,12 +1017,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public int f5(int d, int Km, int Kr) {
-        int tmp = Integer.rotateLeft(d + Km, Kr);
-        int b0 = (tmp >>> 24) & 0xFF;
-        int b1 = (tmp >>> 16) & 0xFF;
-        int b2 = (tmp >>> 8) & 0xFF;
-        int b3 = tmp & 0xFF;
-        return ((S1[b0] - S2[b1]) ^ S3[b2]) + S4[b3];
+        return ScalarEngine.f5(d, Km, Kr);
     }
 
     /**
@@ -435,54 +1031,7 @@ public class CAST384 extends CASTCipher {
      */
     @Override
     public int f6(int d, int Km, int Kr) {
-        int tmp = Integer.rotateLeft(d ^ Km, Kr);
-        int b0 = (tmp >>> 24) & 0xFF;
-        int b1 = (tmp >>> 16) & 0xFF;
-        int b2 = (tmp >>> 8) & 0xFF;
-        int b3 = tmp & 0xFF;
-        return ((S1[b0] + S2[b1]) - S3[b2]) ^ S4[b3];
-    }
-
-    /**
-     * Converts a 192-bit byte array (24 bytes) into a 6-element int array.
-     * How it works:
-     * Each group of 4 bytes is interpreted as a big-endian 32-bit word.
-     * This representation is used for processing 6×32-bit data blocks
-     * within the CAST-384 encryption and decryption rounds.
-     *
-     * @param data the 24-byte input block (big-endian order)
-     * @return an array of 6 integers representing the 192-bit block
-     */
-    private int[] bytesToBlock(byte[] data) {
-        int[] block = new int[6];
-        for (int i = 0; i < 6; i++) {
-            int offset = i * 4;
-            block[i] = ((data[offset] & 0xFF) << 24) |
-                    ((data[offset + 1] & 0xFF) << 16) |
-                    ((data[offset + 2] & 0xFF) << 8) |
-                    (data[offset + 3] & 0xFF);
-        }
-        return block;
-    }
-
-    /**
-     * Converts a 6-element int array (192 bits) into a 24-byte array.
-     * How it works:
-     * Each integer is written in big-endian order back to the byte array.
-     * This will ensure compatibility with the block structure expected by
-     * external systems and test vectors.
-     *
-     * @param block the 6-integer array representing a 192-bit data block
-     * @param data the output byte array (must be at least 24 bytes long)
-     */
-    private void blockToBytes(int[] block, byte[] data) {
-        for (int i = 0; i < 6; i++) {
-            int offset = i * 4;
-            data[offset]     = (byte)(block[i] >>> 24);
-            data[offset + 1] = (byte)(block[i] >>> 16);
-            data[offset + 2] = (byte)(block[i] >>> 8);
-            data[offset + 3] = (byte) block[i];
-        }
+        return ScalarEngine.f6(d, Km, Kr);
     }
 }
 
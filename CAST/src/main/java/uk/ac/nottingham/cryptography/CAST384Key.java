@@ -0,0 +1,149 @@
+package uk.ac.nottingham.cryptography;
+
+import java.util.Objects;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.ROUND_KEYS;
+
+/**
+ * An expanded CAST-384 key that can be shared freely between threads.
+ * <p>
+ * How it works:
+ * The key schedule runs once, in of(), and the 72 masking and rotation keys are kept
+ * in private arrays that nothing can change afterwards. The block methods run on
+ * engines built over those arrays in the constructor; the engines only allocate
+ * per-call scratch, so any number of threads can encrypt and decrypt with the same
+ * key at once without copying it or taking a lock. Unlike CAST384 there is no
+ * mutable state to rekey: a different key is a different CAST384Key.
+ */
+public final class CAST384Key {
+
+    private static final int BULK_LANES = 4;     // Same default as CAST384
+
+    private final int[] km;
+    private final int[] kr;
+    private final ScalarEngine single;
+    private final BlockEngine bulk;
+
+    private CAST384Key(int[] Km, int[] Kr) {
+        this.km = Km;
+        this.kr = Kr;
+        this.single = new ScalarEngine(Km, Kr);
+        this.bulk = new InterleavedEngine(Km, Kr, BULK_LANES);
+    }
+
+    /**
+     * Runs the key schedule on key.
+     *
+     * @param key the user key; shorter keys are zero-padded to 48 bytes as in initialise
+     * @return the expanded key
+     */
+    public static CAST384Key of(byte[] key) {
+        return of(key, 0, key.length);
+    }
+
+    /**
+     * Runs the key schedule on key[off .. off + len).
+     *
+     * @param key array holding the user key
+     * @param off offset of the first key byte
+     * @param len number of key bytes
+     * @return the expanded key
+     */
+    public static CAST384Key of(byte[] key, int off, int len) {
+        CAST384 cipher = new CAST384();
+        cipher.rekey(key, off, len);
+        CASTKeySet keys = cipher.getK();
+        return new CAST384Key(keys.getM(), keys.getR());
+    }
+
+    /**
+     * Wraps round keys that were expanded elsewhere (e.g. by KeyBatch). The arrays
+     * are copied.
+     *
+     * @param keys 72 masking and 72 rotation keys
+     * @return the expanded key
+     */
+    public static CAST384Key of(CASTKeySet keys) {
+        if (keys.getM().length != ROUND_KEYS || keys.getR().length != ROUND_KEYS) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+        return new CAST384Key(keys.getM().clone(), keys.getR().clone());
+    }
+
+    /**
+     * @return a copy of the round keys
+     */
+    public CASTKeySet toKeySet() {
+        return new CASTKeySet(km.clone(), kr.clone());
+    }
+
+    void loadInto(CAST384 cipher) {
+        cipher.loadRoundKeys(km, kr);
+    }
+
+    /**
+     * Encrypts the 24-byte block at in[inOff] into out[outOff].
+     *
+     * @param in     source buffer
+     * @param inOff  offset of the plaintext block
+     * @param out    destination buffer (may be in)
+     * @param outOff offset of the ciphertext block
+     */
+    public void encrypt(byte[] in, int inOff, byte[] out, int outOff) {
+        checkBlocks(in, inOff, out, outOff, 1);
+        single.encryptBlocks(in, inOff, out, outOff, 1);
+    }
+
+    /**
+     * Decrypts the 24-byte block at in[inOff] into out[outOff].
+     *
+     * @param in     source buffer
+     * @param inOff  offset of the ciphertext block
+     * @param out    destination buffer (may be in)
+     * @param outOff offset of the plaintext block
+     */
+    public void decrypt(byte[] in, int inOff, byte[] out, int outOff) {
+        checkBlocks(in, inOff, out, outOff, 1);
+        single.decryptBlocks(in, inOff, out, outOff, 1);
+    }
+
+    /**
+     * Encrypts blockCount consecutive blocks, with the same buffer rules as
+     * Cipher.encryptBlocks.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first plaintext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first ciphertext block
+     * @param blockCount number of 24-byte blocks to encrypt
+     */
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        checkBlocks(in, inOff, out, outOff, blockCount);
+        bulk.encryptBlocks(in, inOff, out, outOff, blockCount);
+    }
+
+    /**
+     * Decrypts blockCount consecutive blocks, with the same buffer rules as
+     * Cipher.decryptBlocks.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first ciphertext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first plaintext block
+     * @param blockCount number of 24-byte blocks to decrypt
+     */
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        checkBlocks(in, inOff, out, outOff, blockCount);
+        bulk.decryptBlocks(in, inOff, out, outOff, blockCount);
+    }
+
+    private static void checkBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        if (blockCount < 0) {
+            throw new IllegalArgumentException("Block count must not be negative");
+        }
+        int len = Math.multiplyExact(blockCount, BLOCK_BYTES);
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+    }
+}
@@ -1,6 +1,15 @@
 package uk.ac.nottingham.cryptography;
 
-import java.util.Arrays;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+
+import static uk.ac.nottingham.cryptography.ByteBuffers.advance;
+import static uk.ac.nottingham.cryptography.ByteBuffers.checkBuffers;
 
 /**
  * Implements Counter (CTR) mode of operation for block ciphers.
@@ -8,16 +17,50 @@ import java.util.Arrays;
  * CTR mode turns a block cipher into a stream cipher by XORing plaintext or ciphertext
  * with keystream blocks generated by encrypting a nonce concatenated with a counter.
  * Encryption and decryption are identical in CTR mode.
+ * <p>
+ * How it works:
+ * The counter blocks live in their own buffer, with the nonce written into every
+ * block once at initialise, so a refill only stores each block's 8-byte counter and
+ * then encrypts the whole run of blocks into the keystream buffer in one call. A
+ * refill covers as much of the current request as fits, up to BULK_BLOCKS blocks,
+ * so large messages are handled in long runs while short ones only pay for the
+ * blocks they use. The data is XORed with the keystream 8 bytes at a time through
+ * long views, with single bytes only at the ends of a run.
+ * <p>
+ * With enablePrefetch the keystream is generated ahead of use instead, by a
+ * background thread filling a ring buffer (see KeystreamPrefetcher), and processing
+ * only XORs out of the ring. The ring is discarded and refilled from the new position
+ * on seek and initialise. While prefetching, the producer thread owns the cipher;
+ * disablePrefetch stops it and returns to generating keystream on demand.
  */
 public class CTRMode extends CipherMode {
+    private static final int KEYSTREAM_BLOCKS = 8;  // Minimum counter blocks encrypted per keystream refill
+    static final int BULK_BLOCKS = 256;         // Maximum counter blocks per refill (6 KiB for CAST-384)
+
+    // Counters are big-endian; the XOR works on any byte order as long as it is consistent
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle BUFFER_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
     private Cipher cipher;           // Underlying block cipher
     private byte[] nonce;            // 128-bit nonce
-    private long counter;            // 64-bit counter value
+    private long counter;            // 64-bit counter value of the next block to generate
     private int blockSize;           // Cipher block size in bytes
 
-    private byte[] keystream;        // Buffer for encrypted counter block
+    private int parallel;            // Refills are a multiple of this many blocks
+    private byte[] counters;         // Counter blocks, nonce prefilled, encrypted into keystream
+    private byte[] buffer;           // Own buffer for encrypted counter blocks
+    private byte[] keystream;        // Keystream being consumed: buffer, or the prefetch ring
+    private int keystreamLen;        // Bytes of keystream generated by the last refill
     private int keystreamPos;        // Current position in keystream
-    private byte[] counterBlock;     // Concatenation of nonce || counter
+
+    private int prefetchBlocks;      // Ring capacity in blocks, 0 when prefetch is off
+    private int refillBelow;         // Producer refills once fewer blocks than this are ready
+    private ThreadFactory prefetchThreads;
+    private KeystreamPrefetcher prefetcher;  // Running producer, when prefetching and initialised
+    private Cleaner.Cleanable prefetchCleanup;  // Stops the producer, now or once this mode is unreachable
+    private long window;             // Ring position of keystream[windowIndex]
+    private int windowIndex;
 
     /**
      * Initialises the CTR mode with the specified cipher, key, and nonce.
@@ -32,15 +75,97 @@ public class CTRMode extends CipherMode {
             throw new IllegalArgumentException("Nonce must be 16 bytes");
         }
 
+        // Whatever is in the ring belongs to the old key; the producer must also let go of the cipher
+        discardPrefetch();
+        cipher.initialise(key);
+
+        // Refill in whole batches of the cipher's engine (e.g. 64 for the bitsliced engine)
+        this.parallel = Math.max(1, cipher.getParallelBlocks());
         this.cipher = cipher;
         this.nonce = nonce.clone();
         this.blockSize = cipher.getBlockLength() / 8;
-        this.keystream = new byte[blockSize];
-        this.counterBlock = new byte[blockSize];
+
+        // Reuse the buffers when re-initialised with a cipher of the same shape
+        int capacity = roundUp(BULK_BLOCKS) * blockSize;
+        if (buffer == null || buffer.length != capacity) {
+            this.counters = new byte[capacity];
+            this.buffer = new byte[capacity];
+        }
+        this.keystream = buffer;
+        int nonceLen = blockSize - 8;
+        for (int base = 0; base < capacity; base += blockSize) {
+            for (int i = 0; i < nonceLen; i++) {
+                counters[base + i] = i < this.nonce.length ? this.nonce[i] : 0;
+            }
+        }
+
         this.counter = 0L;
-        this.keystreamPos = blockSize;  // Force keystream generation
+        this.keystreamLen = 0;
+        this.keystreamPos = 0;  // Force keystream generation
+        startPrefetch();
+    }
 
-        cipher.initialise(key);
+    /**
+     * Generates keystream ahead of use on a background daemon thread. See
+     * enablePrefetch(int, int, ThreadFactory).
+     *
+     * @param ringBlocks  keystream blocks held ready
+     * @param refillBelow the producer refills once fewer than this many blocks are ready
+     */
+    public void enablePrefetch(int ringBlocks, int refillBelow) {
+        enablePrefetch(ringBlocks, refillBelow, task -> {
+            Thread thread = new Thread(task, "ctr-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Generates keystream ahead of use on a thread made by threads, so that processing
+     * a message only XORs. The producer fills a ring of ringBlocks blocks (rounded up
+     * to the cipher's batch size), then sleeps until fewer than refillBelow blocks are
+     * left and refills it in one burst. A message that finds the ring empty waits for
+     * the producer. The setting applies from the current stream position and survives
+     * initialise and seek.
+     * <p>
+     * The producer owns the cipher while prefetching: do not use the cipher directly
+     * until disablePrefetch returns. Call disablePrefetch when done with the mode. A
+     * mode dropped while prefetching has its producer stopped by a Cleaner once the
+     * mode is garbage collected, which may be much later; a thread factory that keeps
+     * a reference to the mode prevents that.
+     *
+     * @param ringBlocks  keystream blocks held ready
+     * @param refillBelow the producer refills once fewer than this many blocks are ready
+     * @param threads     creates the producer thread; virtual threads are fine
+     * @throws IllegalArgumentException unless 1 &lt;= refillBelow &lt;= ringBlocks
+     */
+    public void enablePrefetch(int ringBlocks, int refillBelow, ThreadFactory threads) {
+        if (ringBlocks < 1 || refillBelow < 1 || refillBelow > ringBlocks) {
+            throw new IllegalArgumentException("Prefetch needs 1 <= refillBelow <= ringBlocks");
+        }
+        Objects.requireNonNull(threads, "threads");
+        stopPrefetch();
+        this.prefetchBlocks = ringBlocks;
+        this.refillBelow = refillBelow;
+        this.prefetchThreads = threads;
+        startPrefetch();
+    }
+
+    /**
+     * Stops the producer thread and goes back to generating keystream on demand,
+     * continuing the stream where it left off.
+     */
+    public void disablePrefetch() {
+        stopPrefetch();
+        this.prefetchBlocks = 0;
+        this.prefetchThreads = null;
+    }
+
+    /**
+     * @return true if keystream is generated by a background thread
+     */
+    public boolean isPrefetching() {
+        return prefetchBlocks > 0;
     }
 
     /**
@@ -65,6 +190,94 @@ public class CTRMode extends CipherMode {
         process(data);
     }
 
+    /**
+     * Encrypts len bytes of in into out using CTR mode, continuing the stream of
+     * earlier calls. The slice is XORed straight from in into out; nothing is copied.
+     *
+     * @param in     source array
+     * @param inOff  offset of the first plaintext byte
+     * @param len    number of bytes to encrypt
+     * @param out    destination array (may be in when inOff == outOff)
+     * @param outOff offset of the first ciphertext byte
+     */
+    @Override
+    public void encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkSlice(in, inOff, len, out, outOff);
+        process(in, inOff, out, outOff, len);
+    }
+
+    /**
+     * Decrypts len bytes of in into out using CTR mode.
+     * CTR mode decryption is identical to encryption.
+     *
+     * @param in     source array
+     * @param inOff  offset of the first ciphertext byte
+     * @param len    number of bytes to decrypt
+     * @param out    destination array (may be in when inOff == outOff)
+     * @param outOff offset of the first plaintext byte
+     */
+    @Override
+    public void decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkSlice(in, inOff, len, out, outOff);
+        process(in, inOff, out, outOff, len);
+    }
+
+    /**
+     * Encrypts the remaining bytes of src into dst using CTR mode.
+     * The buffers may be heap or direct and are accessed in place; src == dst
+     * encrypts in place.
+     *
+     * @param src buffer holding the plaintext between its position and limit
+     * @param dst buffer receiving the ciphertext at its position
+     */
+    @Override
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        process(src, dst);
+    }
+
+    /**
+     * Decrypts the remaining bytes of src into dst using CTR mode.
+     * CTR mode decryption is identical to encryption.
+     *
+     * @param src buffer holding the ciphertext between its position and limit
+     * @param dst buffer receiving the plaintext at its position
+     */
+    @Override
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        process(src, dst);
+    }
+
+    /**
+     * Processes the remaining bytes of src into dst by XORing them with the keystream,
+     * reading and writing both buffers by absolute index. Heap buffers go through
+     * the array path on their backing arrays.
+     *
+     * @param src the input buffer
+     * @param dst the output buffer
+     */
+    private void process(ByteBuffer src, ByteBuffer dst) {
+        int len = checkBuffers(src, dst, 1);
+        int in = src.position();
+        int out = dst.position();
+
+        if (src.hasArray() && dst.hasArray()) {
+            process(src.array(), src.arrayOffset() + in, dst.array(), dst.arrayOffset() + out, len);
+        } else {
+            int done = 0;
+            while (done < len) {
+                if (keystreamPos == keystreamLen) {
+                    generateKeystream(len - done);
+                }
+                int n = Math.min(len - done, keystreamLen - keystreamPos);
+                xor(src, in + done, dst, out + done, n);
+                done += n;
+            }
+            releasePrefetched();
+        }
+
+        advance(src, dst, len);
+    }
+
     /**
      * Processes the given data by XORing it with the keystream.
      * New keystream blocks are generated as needed by encrypting the nonce|counter.
@@ -72,34 +285,203 @@ public class CTRMode extends CipherMode {
      * @param data The byte array to process.
      */
     private void process(byte[] data) {
-        for (int i = 0; i < data.length; i++) {
-            if (keystreamPos >= blockSize) {
-                generateKeystreamBlock();
+        process(data, 0, data, 0, data.length);
+    }
+
+    /**
+     * XORs len bytes of in with the keystream into out, refilling the keystream in
+     * runs sized to what is still needed.
+     */
+    private void process(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        int done = 0;
+        while (done < len) {
+            if (keystreamPos == keystreamLen) {
+                generateKeystream(len - done);
             }
-            data[i] ^= keystream[keystreamPos++];
+            int n = Math.min(len - done, keystreamLen - keystreamPos);
+            xor(in, inOff + done, out, outOff + done, n);
+            done += n;
         }
+        releasePrefetched();
     }
 
     /**
-     * Generates a new keystream block by encrypting the current counterBlock.
-     * The block is formed by concatenating the nonce and counter (big-endian).
+     * XORs n bytes of keystream from keystreamPos into out, 8 bytes at a time.
      */
-    private void generateKeystreamBlock() {
-        Arrays.fill(counterBlock, (byte) 0);
+    private void xor(byte[] in, int inOff, byte[] out, int outOff, int n) {
+        xor(in, inOff, keystream, keystreamPos, out, outOff, n);
+        keystreamPos += n;
+    }
 
-        int nonceLen = blockSize - 8;
-        System.arraycopy(nonce, 0, counterBlock, 0, Math.min(nonce.length, nonceLen));
+    /**
+     * out[outOff ..] = in[inOff ..] ^ ks[k ..] for n bytes, 8 bytes at a time. Shared
+     * with ParallelCTR.
+     */
+    static void xor(byte[] in, int inOff, byte[] ks, int k, byte[] out, int outOff, int n) {
+        int i = 0;
+        for (; i <= n - 8; i += 8) {
+            LONG.set(out, outOff + i, (long) LONG.get(in, inOff + i) ^ (long) LONG.get(ks, k + i));
+        }
+        for (; i < n; i++) {
+            out[outOff + i] = (byte) (in[inOff + i] ^ ks[k + i]);
+        }
+    }
+
+    /**
+     * As xor(byte[], ...), for buffers without accessible arrays.
+     */
+    private void xor(ByteBuffer src, int in, ByteBuffer dst, int out, int n) {
+        final byte[] ks = keystream;
+        int k = keystreamPos;
+        int i = 0;
+        for (; i <= n - 8; i += 8) {
+            BUFFER_LONG.set(dst, out + i, (long) BUFFER_LONG.get(src, in + i) ^ (long) LONG.get(ks, k + i));
+        }
+        for (; i < n; i++) {
+            dst.put(out + i, (byte) (src.get(in + i) ^ ks[k + i]));
+        }
+        keystreamPos = k + n;
+    }
+
+    /**
+     * Refills the keystream buffer with enough counter blocks for the next needed
+     * bytes: at least KEYSTREAM_BLOCKS and at most the buffer, in whole batches of
+     * the cipher's engine. Only the counter of each block is written (big-endian,
+     * after the nonce); the blocks are then encrypted together into the keystream.
+     * While prefetching, the next ready stretch of the ring is taken instead.
+     */
+    private void generateKeystream(int needed) {
+        if (prefetcher != null) {
+            takePrefetched();
+            return;
+        }
+        int capacity = buffer.length / blockSize;
+        generateBlocks(Math.min(capacity, roundUp(Math.max(KEYSTREAM_BLOCKS, (needed + blockSize - 1) / blockSize))));
+    }
+
+    /**
+     * Encrypts the next blocks counter blocks into the keystream buffer.
+     */
+    private void generateBlocks(int blocks) {
+        final byte[] c = counters;
+        long next = counter;
+        for (int base = blockSize - 8, end = blocks * blockSize; base < end; base += blockSize) {
+            LONG_BE.set(c, base, next++);     // Wraps on overflow
+        }
+        counter = next;
+
+        cipher.encryptBlocks(c, 0, buffer, 0, blocks);
+        keystreamLen = blocks * blockSize;
+        keystreamPos = 0;
+    }
+
+    /**
+     * Hands the used part of the ring back to the producer and waits for the next
+     * ready stretch, which runs to the end of the ring at most.
+     */
+    private void takePrefetched() {
+        long position = consumed();
+        prefetcher.release(position);
+        int ready = prefetcher.await(position);
+        window = position;
+        windowIndex = prefetcher.index(position);
+        keystreamPos = windowIndex;
+        keystreamLen = windowIndex + ready;
+    }
+
+    /**
+     * Lets the producer refill behind the bytes this call used.
+     */
+    private void releasePrefetched() {
+        if (prefetcher != null) {
+            prefetcher.release(consumed());
+        }
+    }
 
-        // Append counter in big-endian order
-        for (int b = 0; b < 8; b++) {
-            counterBlock[nonceLen + b] = (byte) ((counter >>> (8 * (7 - b))) & 0xFF);
+    /**
+     * @return the ring position of the next keystream byte
+     */
+    private long consumed() {
+        return window + (keystreamPos - windowIndex);
+    }
+
+    /**
+     * Starts the producer at the current stream position, if prefetch is enabled and
+     * the mode is initialised.
+     */
+    private void startPrefetch() {
+        if (prefetchBlocks == 0 || cipher == null) {
+            return;
+        }
+        // The block holding the next keystream byte, and how much of it is used
+        if (keystreamPos < keystreamLen) {
+            startPrefetch(counter - keystreamLen / blockSize + keystreamPos / blockSize, keystreamPos % blockSize);
+        } else {
+            startPrefetch(counter, 0);
         }
+    }
+
+    /**
+     * Starts the producer at block, with the first skip bytes of it already used.
+     */
+    private void startPrefetch(long block, int skip) {
+        int chunk = roundUp(KEYSTREAM_BLOCKS);
+        int ringBlocks = (prefetchBlocks + chunk - 1) / chunk * chunk;
+        prefetcher = new KeystreamPrefetcher(cipher, nonce, blockSize, ringBlocks, chunk,
+                refillBelow, prefetchThreads, block, skip);
+        prefetchCleanup = prefetcher.stopWhenUnreachable(this);
 
-        System.arraycopy(counterBlock, 0, keystream, 0, blockSize);
-        cipher.encrypt(keystream);
+        keystream = prefetcher.buffer();
+        window = skip;
+        windowIndex = skip;
+        keystreamPos = skip;
+        keystreamLen = skip;    // Take from the ring on next use
+    }
 
+    /**
+     * Stops the producer and continues on demand from the position reached in the ring.
+     */
+    private void stopPrefetch() {
+        if (prefetcher == null) {
+            return;
+        }
+        long position = consumed();
+        long block = prefetcher.block(position);
+        int offset = prefetcher.offset(position);
+        discardPrefetch();
+        position(block, offset);
+    }
+
+    /**
+     * Stops the producer and drops the ring without keeping its position.
+     */
+    private void discardPrefetch() {
+        if (prefetcher != null) {
+            prefetchCleanup.clean();
+            prefetchCleanup = null;
+            prefetcher = null;
+            keystream = buffer;
+            keystreamLen = 0;
+            keystreamPos = 0;
+        }
+    }
+
+    /**
+     * Positions the stream offset bytes into the keystream block with the given counter.
+     * Mid-block, only that one block is generated.
+     */
+    private void position(long block, int offset) {
+        counter = block;
+        keystreamLen = 0;
         keystreamPos = 0;
-        counter = (counter + 1) & 0xFFFFFFFFFFFFFFFFL; // Wrap counter on overflow
+        if (offset > 0) {
+            generateBlocks(1);
+            keystreamPos = offset;
+        }
+    }
+
+    private int roundUp(int blocks) {
+        return (blocks + parallel - 1) / parallel * parallel;
     }
 
     /**
@@ -110,11 +492,43 @@ public class CTRMode extends CipherMode {
      */
     @Override
     public void seek(byte[] counterBytes) {
+        discardPrefetch();
         counter = 0;
         for (int i = 0; i < counterBytes.length && i < 8; i++) {
             counter = (counter << 8) | (counterBytes[i] & 0xFF);
         }
-        keystreamPos = blockSize; // Force regeneration on next use
+        keystreamLen = 0;
+        keystreamPos = 0; // Force regeneration on next use
+        startPrefetch();
+    }
+
+    /**
+     * Positions the stream at a byte offset from the start of the keystream (counter
+     * 0), so the next byte processed is the one at byteOffset in the whole message.
+     * The counter becomes byteOffset / blockSize; when the offset falls inside a
+     * block, that block alone is generated and the bytes before the offset skipped.
+     * While prefetching, the ring is discarded and refilled from the new position.
+     *
+     * @param byteOffset offset into the keystream, in bytes
+     * @throws IllegalArgumentException if byteOffset is negative
+     * @throws IllegalStateException    if the mode has not been initialised
+     */
+    public void seek(long byteOffset) {
+        if (byteOffset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        if (cipher == null) {
+            throw new IllegalStateException("CTR mode has not been initialised");
+        }
+        discardPrefetch();
+        long block = byteOffset / blockSize;
+        int offset = (int) (byteOffset % blockSize);
+        if (prefetchBlocks > 0) {
+            counter = block;
+            startPrefetch(block, offset);
+        } else {
+            position(block, offset);
+        }
     }
 }
 
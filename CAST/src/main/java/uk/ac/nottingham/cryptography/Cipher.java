@@ -1,5 +1,11 @@
 package uk.ac.nottingham.cryptography;
 
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static uk.ac.nottingham.cryptography.ByteBuffers.advance;
+import static uk.ac.nottingham.cryptography.ByteBuffers.checkBuffers;
+
 /**
  * Abstract class that defines a Cipher. This class is extended by CASTCipher,
  * and is used primarily within the CipherMode class.
@@ -30,4 +36,135 @@ public abstract class Cipher {
 
     public abstract void decrypt(byte[] data);
 
+    /**
+     * Returns how many blocks the bulk methods process together. Callers that can
+     * choose their batch size, such as CTR keystream generation, should pass a
+     * multiple of this to encryptBlocks.
+     *
+     * @return the preferred number of blocks per bulk call (1 by default)
+     */
+    public int getParallelBlocks() {
+        return 1;
+    }
+
+    /**
+     * Encrypts blockCount consecutive blocks read from in at inOff, writing the
+     * result to out at outOff. The buffers may be the same array when
+     * inOff == outOff (in-place), otherwise the two regions must not overlap.
+     * <br/>
+     * The default implementation copies each block through encrypt(byte[]);
+     * ciphers should override it with a native multi-block path.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first source block
+     * @param out        destination buffer
+     * @param outOff     offset of the first destination block
+     * @param blockCount number of whole blocks to process
+     */
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        processBlocks(in, inOff, out, outOff, blockCount, true);
+    }
+
+    /**
+     * Decrypts blockCount consecutive blocks read from in at inOff, writing the
+     * result to out at outOff. Buffer rules are the same as encryptBlocks.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first source block
+     * @param out        destination buffer
+     * @param outOff     offset of the first destination block
+     * @param blockCount number of whole blocks to process
+     */
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        processBlocks(in, inOff, out, outOff, blockCount, false);
+    }
+
+    /**
+     * Validates the buffers of a multi-block call and returns the number of
+     * bytes it covers.
+     *
+     * @throws IllegalArgumentException  if blockCount is negative
+     * @throws IndexOutOfBoundsException if either region falls outside its buffer
+     */
+    protected final int checkBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        if (blockCount < 0) {
+            throw new IllegalArgumentException("Block count must not be negative");
+        }
+        int len = Math.multiplyExact(blockCount, blockLength / 8);
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+        return len;
+    }
+
+    /**
+     * Encrypts the remaining bytes of src into dst, which must be a whole number of
+     * blocks. Both buffers may be heap or direct; passing the same buffer as src and
+     * dst encrypts in place. On return the position of src (and of dst) has advanced
+     * by the number of bytes processed.
+     * <br/>
+     * The default implementation uses encryptBlocks on the backing arrays of heap
+     * buffers and stages other buffers through a temporary array.
+     *
+     * @param src buffer holding the plaintext between its position and limit
+     * @param dst buffer receiving the ciphertext at its position
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        processBuffers(src, dst, true);
+    }
+
+    /**
+     * Decrypts the remaining bytes of src into dst. Buffer rules are the same as
+     * encrypt(ByteBuffer, ByteBuffer).
+     *
+     * @param src buffer holding the ciphertext between its position and limit
+     * @param dst buffer receiving the plaintext at its position
+     */
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        processBuffers(src, dst, false);
+    }
+
+    private void processBuffers(ByteBuffer src, ByteBuffer dst, boolean forward) {
+        int len = checkBuffers(src, dst, blockLength / 8);
+        int blockBytes = blockLength / 8;
+
+        if (src.hasArray() && dst.hasArray()) {
+            int inOff = src.arrayOffset() + src.position();
+            int outOff = dst.arrayOffset() + dst.position();
+            if (forward) {
+                encryptBlocks(src.array(), inOff, dst.array(), outOff, len / blockBytes);
+            } else {
+                decryptBlocks(src.array(), inOff, dst.array(), outOff, len / blockBytes);
+            }
+        } else {
+            byte[] chunk = new byte[Math.min(len, 256 * blockBytes)];
+            for (int pos = 0; pos < len; pos += chunk.length) {
+                int n = Math.min(chunk.length, len - pos);
+                src.get(src.position() + pos, chunk, 0, n);
+                if (forward) {
+                    encryptBlocks(chunk, 0, chunk, 0, n / blockBytes);
+                } else {
+                    decryptBlocks(chunk, 0, chunk, 0, n / blockBytes);
+                }
+                dst.put(dst.position() + pos, chunk, 0, n);
+            }
+        }
+
+        advance(src, dst, len);
+    }
+
+    private void processBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount, boolean forward) {
+        int len = checkBlocks(in, inOff, out, outOff, blockCount);
+        int blockBytes = blockLength / 8;
+        byte[] block = new byte[blockBytes];
+        for (int pos = 0; pos < len; pos += blockBytes) {
+            System.arraycopy(in, inOff + pos, block, 0, blockBytes);
+            if (forward) {
+                encrypt(block);
+            } else {
+                decrypt(block);
+            }
+            System.arraycopy(block, 0, out, outOff + pos, blockBytes);
+        }
+    }
+
 }
@@ -1,5 +1,12 @@
 package uk.ac.nottingham.cryptography;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static uk.ac.nottingham.cryptography.ByteBuffers.advance;
+import static uk.ac.nottingham.cryptography.ByteBuffers.checkBuffers;
+
 /**
  * Abstract class that partially implements a CipherMode. The class defines
  * simple initialisation, encrypt and decrypt functions.
@@ -25,4 +32,96 @@ public abstract class CipherMode {
     public abstract void decrypt(byte[] data);
 
     public abstract void seek(byte[] counter);
+
+    /**
+     * Encrypts the remaining bytes of src into dst. Both buffers may be heap or direct,
+     * and passing the same buffer as src and dst encrypts in place. On return the
+     * position of src (and of dst) has advanced by the number of bytes processed.
+     * <br/>
+     * The default implementation copies the data through encrypt(byte[]); modes
+     * should override it to work on the buffers directly.
+     *
+     * @param src buffer holding the plaintext between its position and limit
+     * @param dst buffer receiving the ciphertext at its position
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        processBuffers(src, dst, true);
+    }
+
+    /**
+     * Decrypts the remaining bytes of src into dst. Buffer rules are the same as
+     * encrypt(ByteBuffer, ByteBuffer).
+     *
+     * @param src buffer holding the ciphertext between its position and limit
+     * @param dst buffer receiving the plaintext at its position
+     */
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        processBuffers(src, dst, false);
+    }
+
+    /**
+     * Encrypts len bytes of in starting at inOff into out at outOff. Successive calls
+     * continue the same stream as successive encrypt(byte[]) calls would, including
+     * partial blocks.
+     * <br/>
+     * The default implementation copies the slice through encrypt(byte[]); modes
+     * should override it to work on the arrays directly.
+     *
+     * @param in     source array
+     * @param inOff  offset of the first plaintext byte
+     * @param len    number of bytes to encrypt
+     * @param out    destination array (may be in when inOff == outOff)
+     * @param outOff offset of the first ciphertext byte
+     */
+    public void encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        processSlice(in, inOff, len, out, outOff, true);
+    }
+
+    /**
+     * Decrypts len bytes of in starting at inOff into out at outOff. Array rules are
+     * the same as encrypt(byte[], int, int, byte[], int).
+     *
+     * @param in     source array
+     * @param inOff  offset of the first ciphertext byte
+     * @param len    number of bytes to decrypt
+     * @param out    destination array (may be in when inOff == outOff)
+     * @param outOff offset of the first plaintext byte
+     */
+    public void decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        processSlice(in, inOff, len, out, outOff, false);
+    }
+
+    /**
+     * Validates the arrays of an offset/length call.
+     *
+     * @throws IndexOutOfBoundsException if either slice falls outside its array
+     */
+    protected static void checkSlice(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+    }
+
+    private void processBuffers(ByteBuffer src, ByteBuffer dst, boolean forward) {
+        int len = checkBuffers(src, dst, 1);
+        byte[] data = new byte[len];
+        src.get(src.position(), data);
+        if (forward) {
+            encrypt(data);
+        } else {
+            decrypt(data);
+        }
+        dst.put(dst.position(), data);
+        advance(src, dst, len);
+    }
+
+    private void processSlice(byte[] in, int inOff, int len, byte[] out, int outOff, boolean forward) {
+        checkSlice(in, inOff, len, out, outOff);
+        byte[] data = Arrays.copyOfRange(in, inOff, inOff + len);
+        if (forward) {
+            encrypt(data);
+        } else {
+            decrypt(data);
+        }
+        System.arraycopy(data, 0, out, outOff, len);
+    }
 }
@@ -0,0 +1,248 @@
+package uk.ac.nottingham.cryptography;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Hands out CASTCipher and CipherMode instances without a ServiceLoader scan per use.
+ * <p>
+ * How it works:
+ * The first registered provider of each service is looked up once and cached;
+ * newCipher / newMode then only run its constructor. Cipher and mode instances are
+ * stateful and not thread-safe, so for reuse there are two kinds of Pool:
+ *   - threadLocal keeps one instance per thread. This is cheapest for a fixed set of
+ *     platform threads, but with virtual threads every task would get its own.
+ *   - bounded caps the number of instances. acquire() blocks (on a Semaphore, which
+ *     does not pin a virtual thread's carrier) until one is free, and idle instances
+ *     wait in queues striped by thread so concurrent threads rarely contend.
+ * keyed(key) gives a factory of ciphers that are already initialised; the key
+ * schedule runs once and each new cipher copies the result.
+ */
+public final class CipherProvider {
+
+    private CipherProvider() {
+    }
+
+    // Holders, so each provider is looked up on first use only
+    private static final class CipherHolder {
+        static final ServiceLoader.Provider<CASTCipher> PROVIDER = first(CASTCipher.class);
+    }
+
+    private static final class ModeHolder {
+        static final ServiceLoader.Provider<CipherMode> PROVIDER = first(CipherMode.class);
+    }
+
+    private static <S> ServiceLoader.Provider<S> first(Class<S> service) {
+        return ServiceLoader.load(service).stream().findFirst()
+                .orElseThrow(() -> new ServiceConfigurationError("No provider for " + service.getName()));
+    }
+
+    /**
+     * @return a new, uninitialised instance of the registered cipher
+     */
+    public static CASTCipher newCipher() {
+        return CipherHolder.PROVIDER.get();
+    }
+
+    /**
+     * @return a new, uninitialised instance of the registered cipher mode
+     */
+    public static CipherMode newMode() {
+        return ModeHolder.PROVIDER.get();
+    }
+
+    /**
+     * Returns a factory of ciphers initialised with key. When the registered cipher is
+     * CAST384 the key schedule runs once, for the first cipher, and every later cipher
+     * copies its result. Callers must not rekey ciphers that go back into a pool built
+     * on this factory.
+     *
+     * @param key the user key
+     * @return the factory
+     */
+    public static Supplier<CASTCipher> keyed(byte[] key) {
+        return new KeyedFactory(key.clone());
+    }
+
+    /**
+     * Factory behind keyed. The key is only expanded once a CAST384 is actually made.
+     */
+    private static final class KeyedFactory implements Supplier<CASTCipher> {
+        private final byte[] key;
+        private volatile CAST384Key expanded;
+
+        KeyedFactory(byte[] key) {
+            this.key = key;
+        }
+
+        @Override
+        public CASTCipher get() {
+            CASTCipher cipher = newCipher();
+            if (cipher instanceof CAST384) {
+                ((CAST384) cipher).initialise(expanded());
+            } else {
+                cipher.initialise(key);
+            }
+            return cipher;
+        }
+
+        private CAST384Key expanded() {
+            CAST384Key result = expanded;
+            if (result == null) {
+                // Threads racing here each run the schedule and publish equal keys
+                result = CAST384Key.of(key);
+                expanded = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Creates a pool that gives each thread its own instance.
+     *
+     * @param factory creates an instance the first time a thread acquires one
+     * @return the pool
+     */
+    public static <T> Pool<T> threadLocal(Supplier<? extends T> factory) {
+        return new ThreadLocalPool<>(factory);
+    }
+
+    /**
+     * Creates a pool that never holds more than maxInstances instances.
+     *
+     * @param factory      creates instances as they are first needed
+     * @param maxInstances the most instances that can be leased at once
+     * @return the pool
+     */
+    public static <T> Pool<T> bounded(Supplier<? extends T> factory, int maxInstances) {
+        if (maxInstances < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        return new BoundedPool<>(factory, maxInstances);
+    }
+
+    /**
+     * A source of reusable instances. Use as
+     * try (Lease&lt;CASTCipher&gt; lease = pool.acquire()) { lease.get().encrypt(...); }
+     */
+    public abstract static class Pool<T> {
+
+        Pool() {
+        }
+
+        /**
+         * Takes an instance for the calling thread's exclusive use until the lease is
+         * closed.
+         *
+         * @return the lease
+         */
+        public abstract Lease<T> acquire();
+
+        abstract void release(T instance);
+    }
+
+    /**
+     * An instance borrowed from a Pool. Closing the lease returns the instance; it
+     * must not be used afterwards.
+     */
+    public static final class Lease<T> implements AutoCloseable {
+        private final Pool<T> pool;
+        private T instance;
+
+        Lease(Pool<T> pool, T instance) {
+            this.pool = pool;
+            this.instance = instance;
+        }
+
+        /**
+         * @return the leased instance
+         * @throws IllegalStateException if the lease has been closed
+         */
+        public T get() {
+            if (instance == null) {
+                throw new IllegalStateException("Lease has been closed");
+            }
+            return instance;
+        }
+
+        @Override
+        public void close() {
+            T released = instance;
+            if (released != null) {
+                instance = null;
+                pool.release(released);
+            }
+        }
+    }
+
+    /**
+     * One instance per thread; leases on the same thread share it.
+     */
+    private static final class ThreadLocalPool<T> extends Pool<T> {
+        private final ThreadLocal<T> instances;
+
+        ThreadLocalPool(Supplier<? extends T> factory) {
+            this.instances = ThreadLocal.withInitial(factory);
+        }
+
+        @Override
+        public Lease<T> acquire() {
+            return new Lease<>(this, instances.get());
+        }
+
+        @Override
+        void release(T instance) {
+            // Stays with its thread
+        }
+    }
+
+    /**
+     * At most maxInstances instances, idle ones kept in per-stripe queues.
+     */
+    private static final class BoundedPool<T> extends Pool<T> {
+        private final Supplier<? extends T> factory;
+        private final Semaphore permits;
+        private final ConcurrentLinkedQueue<T>[] stripes;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        BoundedPool(Supplier<? extends T> factory, int maxInstances) {
+            this.factory = factory;
+            this.permits = new Semaphore(maxInstances);
+            int count = Math.min(maxInstances, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+            this.stripes = new ConcurrentLinkedQueue[Math.max(1, count)];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new ConcurrentLinkedQueue<>();
+            }
+        }
+
+        @Override
+        public Lease<T> acquire() {
+            permits.acquireUninterruptibly();
+            try {
+                // Prefer this thread's stripe, then take from any other
+                int home = stripe();
+                T instance = null;
+                for (int i = 0; i < stripes.length && instance == null; i++) {
+                    instance = stripes[(home + i) % stripes.length].poll();
+                }
+                return new Lease<>(this, instance != null ? instance : factory.get());
+            } catch (RuntimeException | Error e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        void release(T instance) {
+            stripes[stripe()].offer(instance);
+            permits.release();
+        }
+
+        private int stripe() {
+            return (int) (Thread.currentThread().getId() % stripes.length);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.INT_BE;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f1;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f2;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f3;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f4;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f5;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f6;
+
+/**
+ * Class-file template for a key-specialised CAST-384 engine.
+ * <p>
+ * How it works:
+ * This class is never loaded under its own name. CompiledKeys reads its bytes and
+ * defines a fresh hidden class from them for every compiled key, passing the 72
+ * masking keys followed by the 72 rotation keys as class data. The static initialiser
+ * copies them into static final fields, which the JIT treats as constants, so the
+ * key loads disappear and every rotation becomes a rotate-by-immediate.
+ * <p>
+ * The round structure is that of ScalarEngine.encryptBlocks: A..F stay in locals for
+ * the whole block and the 12 rounds are written out, with the key fields in place of
+ * the round-key array loads. The only calls are to ScalarEngine's small static
+ * F-functions, which C2 inlines into each hidden class with the constant keys as
+ * arguments. The round body itself is not a shared helper: C2 compiles a large shared
+ * method on its own and then stops inlining it into callers, which would turn the
+ * keys back into arguments.
+ */
+final class CompiledKeyTemplate implements BlockEngine {
+
+    private static final int[] KEYS = classData();
+
+    // Round 0
+    private static final int M0 = KEYS[0], M1 = KEYS[1], M2 = KEYS[2], M3 = KEYS[3], M4 = KEYS[4], M5 = KEYS[5];
+    private static final int R0 = KEYS[72], R1 = KEYS[73], R2 = KEYS[74], R3 = KEYS[75], R4 = KEYS[76], R5 = KEYS[77];
+    // Round 1
+    private static final int M6 = KEYS[6], M7 = KEYS[7], M8 = KEYS[8], M9 = KEYS[9], M10 = KEYS[10], M11 = KEYS[11];
+    private static final int R6 = KEYS[78], R7 = KEYS[79], R8 = KEYS[80], R9 = KEYS[81], R10 = KEYS[82], R11 = KEYS[83];
+    // Round 2
+    private static final int M12 = KEYS[12], M13 = KEYS[13], M14 = KEYS[14], M15 = KEYS[15], M16 = KEYS[16], M17 = KEYS[17];
+    private static final int R12 = KEYS[84], R13 = KEYS[85], R14 = KEYS[86], R15 = KEYS[87], R16 = KEYS[88], R17 = KEYS[89];
+    // Round 3
+    private static final int M18 = KEYS[18], M19 = KEYS[19], M20 = KEYS[20], M21 = KEYS[21], M22 = KEYS[22], M23 = KEYS[23];
+    private static final int R18 = KEYS[90], R19 = KEYS[91], R20 = KEYS[92], R21 = KEYS[93], R22 = KEYS[94], R23 = KEYS[95];
+    // Round 4
+    private static final int M24 = KEYS[24], M25 = KEYS[25], M26 = KEYS[26], M27 = KEYS[27], M28 = KEYS[28], M29 = KEYS[29];
+    private static final int R24 = KEYS[96], R25 = KEYS[97], R26 = KEYS[98], R27 = KEYS[99], R28 = KEYS[100], R29 = KEYS[101];
+    // Round 5
+    private static final int M30 = KEYS[30], M31 = KEYS[31], M32 = KEYS[32], M33 = KEYS[33], M34 = KEYS[34], M35 = KEYS[35];
+    private static final int R30 = KEYS[102], R31 = KEYS[103], R32 = KEYS[104], R33 = KEYS[105], R34 = KEYS[106], R35 = KEYS[107];
+    // Round 6
+    private static final int M36 = KEYS[36], M37 = KEYS[37], M38 = KEYS[38], M39 = KEYS[39], M40 = KEYS[40], M41 = KEYS[41];
+    private static final int R36 = KEYS[108], R37 = KEYS[109], R38 = KEYS[110], R39 = KEYS[111], R40 = KEYS[112], R41 = KEYS[113];
+    // Round 7
+    private static final int M42 = KEYS[42], M43 = KEYS[43], M44 = KEYS[44], M45 = KEYS[45], M46 = KEYS[46], M47 = KEYS[47];
+    private static final int R42 = KEYS[114], R43 = KEYS[115], R44 = KEYS[116], R45 = KEYS[117], R46 = KEYS[118], R47 = KEYS[119];
+    // Round 8
+    private static final int M48 = KEYS[48], M49 = KEYS[49], M50 = KEYS[50], M51 = KEYS[51], M52 = KEYS[52], M53 = KEYS[53];
+    private static final int R48 = KEYS[120], R49 = KEYS[121], R50 = KEYS[122], R51 = KEYS[123], R52 = KEYS[124], R53 = KEYS[125];
+    // Round 9
+    private static final int M54 = KEYS[54], M55 = KEYS[55], M56 = KEYS[56], M57 = KEYS[57], M58 = KEYS[58], M59 = KEYS[59];
+    private static final int R54 = KEYS[126], R55 = KEYS[127], R56 = KEYS[128], R57 = KEYS[129], R58 = KEYS[130], R59 = KEYS[131];
+    // Round 10
+    private static final int M60 = KEYS[60], M61 = KEYS[61], M62 = KEYS[62], M63 = KEYS[63], M64 = KEYS[64], M65 = KEYS[65];
+    private static final int R60 = KEYS[132], R61 = KEYS[133], R62 = KEYS[134], R63 = KEYS[135], R64 = KEYS[136], R65 = KEYS[137];
+    // Round 11
+    private static final int M66 = KEYS[66], M67 = KEYS[67], M68 = KEYS[68], M69 = KEYS[69], M70 = KEYS[70], M71 = KEYS[71];
+    private static final int R66 = KEYS[138], R67 = KEYS[139], R68 = KEYS[140], R69 = KEYS[141], R70 = KEYS[142], R71 = KEYS[143];
+
+    CompiledKeyTemplate() {
+    }
+
+    private static int[] classData() {
+        try {
+            return MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, int[].class);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Compiled key template used outside CompiledKeys", e);
+        }
+    }
+
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) INT_BE.get(in, inOff);
+            int b = (int) INT_BE.get(in, inOff + 4);
+            int c = (int) INT_BE.get(in, inOff + 8);
+            int d = (int) INT_BE.get(in, inOff + 12);
+            int e = (int) INT_BE.get(in, inOff + 16);
+            int f = (int) INT_BE.get(in, inOff + 20);
+
+            // Round 0: hexad
+            e ^= f1(f, M0, R0);
+            d ^= f2(e, M1, R1);
+            c ^= f3(d, M2, R2);
+            b ^= f4(c, M3, R3);
+            a ^= f5(b, M4, R4);
+            f ^= f6(a, M5, R5);
+            // Round 1: hexad
+            e ^= f1(f, M6, R6);
+            d ^= f2(e, M7, R7);
+            c ^= f3(d, M8, R8);
+            b ^= f4(c, M9, R9);
+            a ^= f5(b, M10, R10);
+            f ^= f6(a, M11, R11);
+            // Round 2: hexad
+            e ^= f1(f, M12, R12);
+            d ^= f2(e, M13, R13);
+            c ^= f3(d, M14, R14);
+            b ^= f4(c, M15, R15);
+            a ^= f5(b, M16, R16);
+            f ^= f6(a, M17, R17);
+            // Round 3: hexad
+            e ^= f1(f, M18, R18);
+            d ^= f2(e, M19, R19);
+            c ^= f3(d, M20, R20);
+            b ^= f4(c, M21, R21);
+            a ^= f5(b, M22, R22);
+            f ^= f6(a, M23, R23);
+            // Round 4: hexad
+            e ^= f1(f, M24, R24);
+            d ^= f2(e, M25, R25);
+            c ^= f3(d, M26, R26);
+            b ^= f4(c, M27, R27);
+            a ^= f5(b, M28, R28);
+            f ^= f6(a, M29, R29);
+            // Round 5: hexad
+            e ^= f1(f, M30, R30);
+            d ^= f2(e, M31, R31);
+            c ^= f3(d, M32, R32);
+            b ^= f4(c, M33, R33);
+            a ^= f5(b, M34, R34);
+            f ^= f6(a, M35, R35);
+            // Round 6: hexadInv
+            f ^= f6(a, M41, R41);
+            a ^= f5(b, M40, R40);
+            b ^= f4(c, M39, R39);
+            c ^= f3(d, M38, R38);
+            d ^= f2(e, M37, R37);
+            e ^= f1(f, M36, R36);
+            // Round 7: hexadInv
+            f ^= f6(a, M47, R47);
+            a ^= f5(b, M46, R46);
+            b ^= f4(c, M45, R45);
+            c ^= f3(d, M44, R44);
+            d ^= f2(e, M43, R43);
+            e ^= f1(f, M42, R42);
+            // Round 8: hexadInv
+            f ^= f6(a, M53, R53);
+            a ^= f5(b, M52, R52);
+            b ^= f4(c, M51, R51);
+            c ^= f3(d, M50, R50);
+            d ^= f2(e, M49, R49);
+            e ^= f1(f, M48, R48);
+            // Round 9: hexadInv
+            f ^= f6(a, M59, R59);
+            a ^= f5(b, M58, R58);
+            b ^= f4(c, M57, R57);
+            c ^= f3(d, M56, R56);
+            d ^= f2(e, M55, R55);
+            e ^= f1(f, M54, R54);
+            // Round 10: hexadInv
+            f ^= f6(a, M65, R65);
+            a ^= f5(b, M64, R64);
+            b ^= f4(c, M63, R63);
+            c ^= f3(d, M62, R62);
+            d ^= f2(e, M61, R61);
+            e ^= f1(f, M60, R60);
+            // Round 11: hexadInv
+            f ^= f6(a, M71, R71);
+            a ^= f5(b, M70, R70);
+            b ^= f4(c, M69, R69);
+            c ^= f3(d, M68, R68);
+            d ^= f2(e, M67, R67);
+            e ^= f1(f, M66, R66);
+
+            INT_BE.set(out, outOff, a);
+            INT_BE.set(out, outOff + 4, b);
+            INT_BE.set(out, outOff + 8, c);
+            INT_BE.set(out, outOff + 12, d);
+            INT_BE.set(out, outOff + 16, e);
+            INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) INT_BE.get(in, inOff);
+            int b = (int) INT_BE.get(in, inOff + 4);
+            int c = (int) INT_BE.get(in, inOff + 8);
+            int d = (int) INT_BE.get(in, inOff + 12);
+            int e = (int) INT_BE.get(in, inOff + 16);
+            int f = (int) INT_BE.get(in, inOff + 20);
+
+            // Round 11: hexad
+            e ^= f1(f, M66, R66);
+            d ^= f2(e, M67, R67);
+            c ^= f3(d, M68, R68);
+            b ^= f4(c, M69, R69);
+            a ^= f5(b, M70, R70);
+            f ^= f6(a, M71, R71);
+            // Round 10: hexad
+            e ^= f1(f, M60, R60);
+            d ^= f2(e, M61, R61);
+            c ^= f3(d, M62, R62);
+            b ^= f4(c, M63, R63);
+            a ^= f5(b, M64, R64);
+            f ^= f6(a, M65, R65);
+            // Round 9: hexad
+            e ^= f1(f, M54, R54);
+            d ^= f2(e, M55, R55);
+            c ^= f3(d, M56, R56);
+            b ^= f4(c, M57, R57);
+            a ^= f5(b, M58, R58);
+            f ^= f6(a, M59, R59);
+            // Round 8: hexad
+            e ^= f1(f, M48, R48);
+            d ^= f2(e, M49, R49);
+            c ^= f3(d, M50, R50);
+            b ^= f4(c, M51, R51);
+            a ^= f5(b, M52, R52);
+            f ^= f6(a, M53, R53);
+            // Round 7: hexad
+            e ^= f1(f, M42, R42);
+            d ^= f2(e, M43, R43);
+            c ^= f3(d, M44, R44);
+            b ^= f4(c, M45, R45);
+            a ^= f5(b, M46, R46);
+            f ^= f6(a, M47, R47);
+            // Round 6: hexad
+            e ^= f1(f, M36, R36);
+            d ^= f2(e, M37, R37);
+            c ^= f3(d, M38, R38);
+            b ^= f4(c, M39, R39);
+            a ^= f5(b, M40, R40);
+            f ^= f6(a, M41, R41);
+            // Round 5: hexadInv
+            f ^= f6(a, M35, R35);
+            a ^= f5(b, M34, R34);
+            b ^= f4(c, M33, R33);
+            c ^= f3(d, M32, R32);
+            d ^= f2(e, M31, R31);
+            e ^= f1(f, M30, R30);
+            // Round 4: hexadInv
+            f ^= f6(a, M29, R29);
+            a ^= f5(b, M28, R28);
+            b ^= f4(c, M27, R27);
+            c ^= f3(d, M26, R26);
+            d ^= f2(e, M25, R25);
+            e ^= f1(f, M24, R24);
+            // Round 3: hexadInv
+            f ^= f6(a, M23, R23);
+            a ^= f5(b, M22, R22);
+            b ^= f4(c, M21, R21);
+            c ^= f3(d, M20, R20);
+            d ^= f2(e, M19, R19);
+            e ^= f1(f, M18, R18);
+            // Round 2: hexadInv
+            f ^= f6(a, M17, R17);
+            a ^= f5(b, M16, R16);
+            b ^= f4(c, M15, R15);
+            c ^= f3(d, M14, R14);
+            d ^= f2(e, M13, R13);
+            e ^= f1(f, M12, R12);
+            // Round 1: hexadInv
+            f ^= f6(a, M11, R11);
+            a ^= f5(b, M10, R10);
+            b ^= f4(c, M9, R9);
+            c ^= f3(d, M8, R8);
+            d ^= f2(e, M7, R7);
+            e ^= f1(f, M6, R6);
+            // Round 0: hexadInv
+            f ^= f6(a, M5, R5);
+            a ^= f5(b, M4, R4);
+            b ^= f4(c, M3, R3);
+            c ^= f3(d, M2, R2);
+            d ^= f2(e, M1, R1);
+            e ^= f1(f, M0, R0);
+
+            INT_BE.set(out, outOff, a);
+            INT_BE.set(out, outOff + 4, b);
+            INT_BE.set(out, outOff + 8, c);
+            INT_BE.set(out, outOff + 12, d);
+            INT_BE.set(out, outOff + 16, e);
+            INT_BE.set(out, outOff + 20, f);
+        }
+    }
+}
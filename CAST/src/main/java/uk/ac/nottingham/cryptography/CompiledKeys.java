@@ -0,0 +1,71 @@
+package uk.ac.nottingham.cryptography;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Builds key-specialised block engines at runtime.
+ * <p>
+ * How it works:
+ * Each call defines a new hidden class from the bytes of CompiledKeyTemplate, with the
+ * round keys attached as class data (MethodHandles.Lookup.defineHiddenClassWithClassData).
+ * The template turns that data into static final constants, so the JIT compiles code with
+ * the masking keys and rotation amounts baked in. Hidden classes are not strongly linked
+ * to their defining loader, so an engine is unloaded once it is no longer referenced.
+ * <p>
+ * Generating and warming a class costs far more than expanding a key, so this is only
+ * worthwhile for long-lived keys that encrypt large volumes of data.
+ */
+final class CompiledKeys {
+
+    private static final String TEMPLATE = "CompiledKeyTemplate.class";
+
+    private static final byte[] templateBytes = readTemplate();
+
+    private CompiledKeys() {
+    }
+
+    /**
+     * Compiles an engine specialised for the given round keys. The key values are
+     * copied, so later changes to the arrays do not affect the engine.
+     *
+     * @param Km 72 round masking keys
+     * @param Kr 72 round rotation keys
+     * @return an engine with the keys embedded as constants
+     */
+    static BlockEngine compile(int[] Km, int[] Kr) {
+        if (Km.length != ScalarEngine.ROUND_KEYS || Kr.length != ScalarEngine.ROUND_KEYS) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+
+        int[] keys = new int[ScalarEngine.ROUND_KEYS * 2];
+        System.arraycopy(Km, 0, keys, 0, ScalarEngine.ROUND_KEYS);
+        System.arraycopy(Kr, 0, keys, ScalarEngine.ROUND_KEYS, ScalarEngine.ROUND_KEYS);
+
+        try {
+            MethodHandles.Lookup hidden = MethodHandles.lookup()
+                    .defineHiddenClassWithClassData(templateBytes, keys, true);
+            return (BlockEngine) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to compile CAST-384 key", e);
+        }
+    }
+
+    private static byte[] readTemplate() {
+        // Read by resource name so the template class itself is never loaded
+        try (InputStream in = CompiledKeys.class.getResourceAsStream(TEMPLATE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing " + TEMPLATE);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static uk.ac.nottingham.cryptography.PackedSboxEngine.DIRECT;
+
+/**
+ * Scalar CAST-384 engine that reads the S-boxes from a 64-byte aligned off-heap table.
+ * <p>
+ * How it works:
+ * The packed box * 256 + byte layout of PackedSboxEngine is copied into a direct
+ * buffer sliced to start on a 64-byte boundary, so the 4 KB of S-box data maps onto
+ * exactly 64 cache lines and shares none of them with other objects. Entries are read
+ * through a native-order int view of the buffer, which checks every index against the
+ * buffer's limit, so unlike PackedSboxEngine these lookups are not bounds-check free.
+ * The rounds are PackedSboxEngine's: this class only supplies the table and passes
+ * the DIRECT layout to its constructor.
+ */
+final class DirectSboxEngine extends PackedSboxEngine {
+
+    private static final int CACHE_LINE = 64;
+
+    private static final VarHandle INT_NATIVE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    static final ByteBuffer TABLE = allocate();
+
+    DirectSboxEngine(int[] Km, int[] Kr) {
+        super(Km, Kr, DIRECT);
+    }
+
+    private static ByteBuffer allocate() {
+        int[] packed = PackedSboxEngine.pack();
+        ByteBuffer table = ByteBuffer.allocateDirect(packed.length * 4 + CACHE_LINE)
+                .alignedSlice(CACHE_LINE)
+                .order(ByteOrder.nativeOrder());
+        table.asIntBuffer().put(packed);
+        return table;
+    }
+
+    /**
+     * Reads entry index of the packed table from the aligned block.
+     */
+    static int sbox(int index) {
+        return (int) INT_NATIVE.get(TABLE, index << 2);
+    }
+}
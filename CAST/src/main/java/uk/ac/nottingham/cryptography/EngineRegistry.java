@@ -0,0 +1,302 @@
+package uk.ac.nottingham.cryptography;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.ROUND_KEYS;
+
+/**
+ * The CAST-384 block engines, what each one needs, and which one to use for a call of
+ * a given size.
+ * <p>
+ * How it works:
+ * Every engine is listed in Engine with its capabilities. On first use the registry
+ * times each available engine for about CALIBRATION_NANOS on this CPU, split between
+ * the size classes (a single block, a few blocks, bulk), and remembers the fastest
+ * one per class. A CAST384 with setAutoTuned(true) then picks the engine by the
+ * number of blocks in each call. The choice can be fixed instead with the system
+ * property PROPERTY, either as one engine name for every class ("interleaved") or
+ * per class ("single=scalar,bulk=vector"); classes left out are still calibrated.
+ * An engine named there that is not available on this JVM is calibrated around.
+ */
+public final class EngineRegistry {
+
+    /** System property that overrides the calibrated choice. */
+    public static final String PROPERTY = "uk.ac.nottingham.cryptography.engine";
+
+    static final long CALIBRATION_NANOS = 100_000_000L;    // Per engine, over all size classes
+
+    private static volatile Map<SizeClass, Engine> selection;
+
+    private EngineRegistry() {
+    }
+
+    /**
+     * A block engine and its capabilities. Engines hold only the round keys, so one
+     * engine may be shared between threads; the CAST384 that owns it may not.
+     */
+    public enum Engine {
+        /** One block at a time through the split S-boxes. */
+        SCALAR(false, Set.of()) {
+            @Override
+            BlockEngine create(int[] Km, int[] Kr) {
+                return new ScalarEngine(Km, Kr);
+            }
+        },
+        /** Four blocks in round-lockstep (see CAST384.setLanes). */
+        INTERLEAVED(true, Set.of()) {
+            @Override
+            BlockEngine create(int[] Km, int[] Kr) {
+                return new InterleavedEngine(Km, Kr, 4);
+            }
+        },
+        /** One block at a time through the packed 4 KB S-box table. */
+        PACKED(false, Set.of()) {
+            @Override
+            BlockEngine create(int[] Km, int[] Kr) {
+                return new PackedSboxEngine(Km, Kr);
+            }
+        },
+        /** As PACKED, with the table off-heap and cache-line aligned. */
+        PACKED_DIRECT(false, Set.of()) {
+            @Override
+            BlockEngine create(int[] Km, int[] Kr) {
+                return new DirectSboxEngine(Km, Kr);
+            }
+        },
+        /** SIMD gathers across a vector of blocks (see CAST384.setVectorized). */
+        VECTOR(true, Set.of("jdk.incubator.vector")) {
+            @Override
+            BlockEngine create(int[] Km, int[] Kr) {
+                return VectorEngines.create(Km, Kr);
+            }
+
+            @Override
+            public boolean isAvailable() {
+                return VectorEngines.isAvailable();
+            }
+        },
+        /** Table-free circuits over 64 blocks (see CAST384.setBitsliced). */
+        BITSLICED(true, Set.of()) {
+            @Override
+            BlockEngine create(int[] Km, int[] Kr) {
+                return new BitslicedEngine(Km, Kr);
+            }
+        };
+
+        private final boolean bulk;
+        private final Set<String> modules;
+
+        Engine(boolean bulk, Set<String> modules) {
+            this.bulk = bulk;
+            this.modules = modules;
+        }
+
+        abstract BlockEngine create(int[] Km, int[] Kr);
+
+        /**
+         * @return true if one engine can serve several threads at once
+         */
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        /**
+         * @return true if the engine processes several blocks together, so it only
+         *         pays off for calls of more than one block
+         */
+        public boolean isBulk() {
+            return bulk;
+        }
+
+        /**
+         * @return the JDK modules the JVM must have resolved to use this engine
+         */
+        public Set<String> requiredModules() {
+            return modules;
+        }
+
+        /**
+         * @return true if the engine can be used on this JVM
+         */
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+
+    /**
+     * Call sizes the engine is chosen for.
+     */
+    public enum SizeClass {
+        /** One block. */
+        SINGLE(1),
+        /** Up to 63 blocks. */
+        SMALL(16),
+        /** 64 blocks or more. */
+        BULK(256);
+
+        private final int calibrationBlocks;
+
+        SizeClass(int calibrationBlocks) {
+            this.calibrationBlocks = calibrationBlocks;
+        }
+
+        /**
+         * @param blockCount number of blocks in a call
+         * @return the class of such a call
+         */
+        public static SizeClass of(int blockCount) {
+            return blockCount <= 1 ? SINGLE : blockCount < 64 ? SMALL : BULK;
+        }
+    }
+
+    /**
+     * @return the engines that can be used on this JVM
+     */
+    public static List<Engine> engines() {
+        List<Engine> engines = new ArrayList<>();
+        for (Engine engine : Engine.values()) {
+            if (engine.isAvailable()) {
+                engines.add(engine);
+            }
+        }
+        return Collections.unmodifiableList(engines);
+    }
+
+    /**
+     * Returns the engine used for calls of the given class, calibrating on first use.
+     *
+     * @param size the size class
+     * @return the selected engine
+     */
+    public static Engine selected(SizeClass size) {
+        return selections().get(size);
+    }
+
+    /**
+     * @return the selected engine of every size class, calibrating on first use
+     */
+    public static Map<SizeClass, Engine> selections() {
+        Map<SizeClass, Engine> s = selection;
+        if (s == null) {
+            synchronized (EngineRegistry.class) {
+                s = selection;
+                if (s == null) {
+                    selection = s = select(System.getProperty(PROPERTY));
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Re-reads PROPERTY and calibrates again. Ciphers pick up the new choice when
+     * their engine is next rebuilt (initialise, setAutoTuned).
+     *
+     * @throws IllegalArgumentException if PROPERTY names an unknown engine or class
+     */
+    public static synchronized void reload() {
+        selection = select(System.getProperty(PROPERTY));
+    }
+
+    private static Map<SizeClass, Engine> select(String property) {
+        Map<SizeClass, Engine> chosen = new EnumMap<>(SizeClass.class);
+        if (property != null && !property.isBlank()) {
+            for (String part : property.split(",")) {
+                String[] pair = part.split("=", 2);
+                if (pair.length == 1) {
+                    for (SizeClass size : SizeClass.values()) {
+                        chosen.put(size, engine(pair[0]));
+                    }
+                } else {
+                    chosen.put(sizeClass(pair[0]), engine(pair[1]));
+                }
+            }
+            chosen.values().removeIf(engine -> !engine.isAvailable());
+        }
+
+        List<SizeClass> missing = new ArrayList<>();
+        for (SizeClass size : SizeClass.values()) {
+            if (!chosen.containsKey(size)) {
+                missing.add(size);
+            }
+        }
+        if (!missing.isEmpty()) {
+            chosen.putAll(calibrate(missing));
+        }
+        return Collections.unmodifiableMap(chosen);
+    }
+
+    /**
+     * Times every available engine on each size class and returns the fastest.
+     * Each engine gets CALIBRATION_NANOS split evenly between the classes; the first
+     * quarter of every slice is warm-up and not counted.
+     */
+    private static Map<SizeClass, Engine> calibrate(List<SizeClass> sizes) {
+        int[] km = new int[ROUND_KEYS];
+        int[] kr = new int[ROUND_KEYS];
+        for (int i = 0; i < ROUND_KEYS; i++) {
+            km[i] = 0x9E3779B9 * (i + 1);
+            kr[i] = (i * 7) & 0x1F;
+        }
+
+        long slice = CALIBRATION_NANOS / sizes.size();
+        Map<SizeClass, Engine> fastest = new EnumMap<>(SizeClass.class);
+        double[] best = new double[SizeClass.values().length];
+        for (Engine engine : engines()) {
+            BlockEngine blocks = engine.create(km, kr);
+            for (SizeClass size : sizes) {
+                double rate = measure(blocks, size.calibrationBlocks, slice);
+                if (rate > best[size.ordinal()]) {
+                    best[size.ordinal()] = rate;
+                    fastest.put(size, engine);
+                }
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * @return blocks per nanosecond
+     */
+    private static double measure(BlockEngine engine, int blockCount, long nanos) {
+        byte[] data = new byte[blockCount * BLOCK_BYTES];
+        long start = System.nanoTime();
+        long warm = start + nanos / 4;
+        long end = start + nanos;
+
+        long now;
+        while ((now = System.nanoTime()) < warm) {
+            engine.encryptBlocks(data, 0, data, 0, blockCount);
+        }
+        long from = now;
+        long blocks = 0;
+        do {
+            engine.encryptBlocks(data, 0, data, 0, blockCount);
+            blocks += blockCount;
+        } while ((now = System.nanoTime()) < end);
+        return (double) blocks / (now - from);
+    }
+
+    private static Engine engine(String name) {
+        try {
+            return Engine.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown CAST-384 engine in " + PROPERTY + ": " + name.trim());
+        }
+    }
+
+    private static SizeClass sizeClass(String name) {
+        try {
+            return SizeClass.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown size class in " + PROPERTY + ": " + name.trim());
+        }
+    }
+}
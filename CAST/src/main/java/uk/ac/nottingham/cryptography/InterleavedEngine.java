@@ -0,0 +1,153 @@
+package uk.ac.nottingham.cryptography;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.INT_BE;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f1;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f2;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f3;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f4;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f5;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f6;
+
+/**
+ * Multi-lane CAST-384 engine that runs several independent blocks in round-lockstep.
+ * <p>
+ * How it works:
+ * Within one block every hexad step depends on the word produced by the step before,
+ * so a single block is a long serial chain of S-box loads. This engine loads a group of
+ * 2, 4 or 8 blocks ("lanes") and applies each step to every lane before moving on, so
+ * the lookups of different blocks are independent and the out-of-order core can overlap
+ * them. Word j of lane l is held in w[j][l]; the scratch arrays are allocated once per
+ * call, never per block. Blocks left over after the last full group go through the
+ * scalar engine.
+ */
+final class InterleavedEngine implements BlockEngine {
+
+    private final int[] km;
+    private final int[] kr;
+    private final int lanes;
+    private final ScalarEngine tail;
+
+    /**
+     * @param Km    72 round masking keys
+     * @param Kr    72 round rotation keys
+     * @param lanes number of blocks processed together (2, 4 or 8)
+     */
+    InterleavedEngine(int[] Km, int[] Kr, int lanes) {
+        if (lanes != 2 && lanes != 4 && lanes != 8) {
+            throw new IllegalArgumentException("Lane count must be 2, 4 or 8");
+        }
+        this.tail = new ScalarEngine(Km, Kr);
+        this.km = Km;
+        this.kr = Kr;
+        this.lanes = lanes;
+    }
+
+    int lanes() {
+        return lanes;
+    }
+
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        int groups = blockCount / lanes;
+        if (groups > 0) {
+            encryptGroups(in, inOff, out, outOff, groups);
+        }
+
+        int done = groups * lanes * BLOCK_BYTES;
+        tail.encryptBlocks(in, inOff + done, out, outOff + done, blockCount - groups * lanes);
+    }
+
+    private void encryptGroups(byte[] in, int inOff, byte[] out, int outOff, int groups) {
+        int[] a = new int[lanes], b = new int[lanes], c = new int[lanes];
+        int[] d = new int[lanes], e = new int[lanes], f = new int[lanes];
+
+        for (int g = 0; g < groups; g++) {
+            load(in, inOff, a, b, c, d, e, f);
+            for (int k = 0; k < 36; k += 6) {
+                hexad(a, b, c, d, e, f, k);       // Rounds 0 to 5
+            }
+            for (int k = 36; k < 72; k += 6) {
+                hexadInv(a, b, c, d, e, f, k);    // Rounds 6 to 11
+            }
+            store(out, outOff, a, b, c, d, e, f);
+            inOff += lanes * BLOCK_BYTES;
+            outOff += lanes * BLOCK_BYTES;
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        int groups = blockCount / lanes;
+        if (groups > 0) {
+            decryptGroups(in, inOff, out, outOff, groups);
+        }
+
+        int done = groups * lanes * BLOCK_BYTES;
+        tail.decryptBlocks(in, inOff + done, out, outOff + done, blockCount - groups * lanes);
+    }
+
+    private void decryptGroups(byte[] in, int inOff, byte[] out, int outOff, int groups) {
+        int[] a = new int[lanes], b = new int[lanes], c = new int[lanes];
+        int[] d = new int[lanes], e = new int[lanes], f = new int[lanes];
+
+        for (int g = 0; g < groups; g++) {
+            load(in, inOff, a, b, c, d, e, f);
+            for (int k = 66; k >= 36; k -= 6) {
+                hexad(a, b, c, d, e, f, k);       // Rounds 11 to 6
+            }
+            for (int k = 30; k >= 0; k -= 6) {
+                hexadInv(a, b, c, d, e, f, k);    // Rounds 5 to 0
+            }
+            store(out, outOff, a, b, c, d, e, f);
+            inOff += lanes * BLOCK_BYTES;
+            outOff += lanes * BLOCK_BYTES;
+        }
+    }
+
+    private void hexad(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int k) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        final int n = lanes;
+        for (int l = 0; l < n; l++) e[l] ^= f1(f[l], km[k], kr[k]);
+        for (int l = 0; l < n; l++) d[l] ^= f2(e[l], km[k + 1], kr[k + 1]);
+        for (int l = 0; l < n; l++) c[l] ^= f3(d[l], km[k + 2], kr[k + 2]);
+        for (int l = 0; l < n; l++) b[l] ^= f4(c[l], km[k + 3], kr[k + 3]);
+        for (int l = 0; l < n; l++) a[l] ^= f5(b[l], km[k + 4], kr[k + 4]);
+        for (int l = 0; l < n; l++) f[l] ^= f6(a[l], km[k + 5], kr[k + 5]);
+    }
+
+    private void hexadInv(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int k) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        final int n = lanes;
+        for (int l = 0; l < n; l++) f[l] ^= f6(a[l], km[k + 5], kr[k + 5]);
+        for (int l = 0; l < n; l++) a[l] ^= f5(b[l], km[k + 4], kr[k + 4]);
+        for (int l = 0; l < n; l++) b[l] ^= f4(c[l], km[k + 3], kr[k + 3]);
+        for (int l = 0; l < n; l++) c[l] ^= f3(d[l], km[k + 2], kr[k + 2]);
+        for (int l = 0; l < n; l++) d[l] ^= f2(e[l], km[k + 1], kr[k + 1]);
+        for (int l = 0; l < n; l++) e[l] ^= f1(f[l], km[k], kr[k]);
+    }
+
+    private void load(byte[] in, int off, int[] a, int[] b, int[] c, int[] d, int[] e, int[] f) {
+        for (int l = 0; l < lanes; l++, off += BLOCK_BYTES) {
+            a[l] = (int) INT_BE.get(in, off);
+            b[l] = (int) INT_BE.get(in, off + 4);
+            c[l] = (int) INT_BE.get(in, off + 8);
+            d[l] = (int) INT_BE.get(in, off + 12);
+            e[l] = (int) INT_BE.get(in, off + 16);
+            f[l] = (int) INT_BE.get(in, off + 20);
+        }
+    }
+
+    private void store(byte[] out, int off, int[] a, int[] b, int[] c, int[] d, int[] e, int[] f) {
+        for (int l = 0; l < lanes; l++, off += BLOCK_BYTES) {
+            INT_BE.set(out, off, a[l]);
+            INT_BE.set(out, off + 4, b[l]);
+            INT_BE.set(out, off + 8, c[l]);
+            INT_BE.set(out, off + 12, d[l]);
+            INT_BE.set(out, off + 16, e[l]);
+            INT_BE.set(out, off + 20, f[l]);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package uk.ac.nottingham.cryptography;
+
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.ROUND_KEYS;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f1;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f2;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f3;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f4;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f5;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f6;
+
+/**
+ * The CAST-384 round keys of many user keys, expanded together into one buffer.
+ * <p>
+ * How it works:
+ * The masking and rotation keys are held structure-of-arrays in two int[] of
+ * 72 * size() entries each. Round key r of key i is at index r * size() + i, so
+ * the same round key of consecutive keys is contiguous and can be read as a group.
+ * The encryptBlocks / decryptBlocks methods use this to encrypt block i under key i
+ * for a whole array of blocks in one call (see MultiKeyEngine).
+ * <p>
+ * Expansion follows CAST384.initialise, but keys are processed in groups of LANES:
+ * each step of the dodecad function is applied to every key of the group before the
+ * next step, so the S-box lookups of different keys overlap instead of forming one
+ * long serial chain. The key-independent Tm/Tr schedule is the one CAST384 shares
+ * across all keys. With parallel expansion the groups are also spread over
+ * the common fork-join pool.
+ */
+public final class KeyBatch {
+
+    static final int LANES = 4;                  // Keys whose dodecad chains are interleaved
+
+    private static final int KEY_WORDS = 12;
+    private static final int KEY_BYTES = 48;
+    private static final int ROUNDS = 12;
+    private static final int DODECAD_COUNT = 4;
+
+    private final int size;
+    private final int[] km;
+    private final int[] kr;
+    private MultiKeyEngine engine;               // Created on first block operation
+
+    private KeyBatch(int size) {
+        this.size = size;
+        this.km = new int[ROUND_KEYS * size];
+        this.kr = new int[ROUND_KEYS * size];
+    }
+
+    /**
+     * Expands every key on the calling thread.
+     *
+     * @param keys user keys; shorter keys are zero-padded to 48 bytes as in initialise
+     * @return the expanded round keys, in the order of keys
+     */
+    public static KeyBatch expand(byte[][] keys) {
+        return expand(keys, false);
+    }
+
+    /**
+     * Expands every key, optionally spreading the work over the common fork-join pool.
+     *
+     * @param keys     user keys; shorter keys are zero-padded to 48 bytes as in initialise
+     * @param parallel true to expand groups of keys on several cores
+     * @return the expanded round keys, in the order of keys
+     */
+    public static KeyBatch expand(byte[][] keys, boolean parallel) {
+        for (byte[] key : keys) {
+            Objects.requireNonNull(key, "key");
+        }
+
+        KeyBatch batch = new KeyBatch(keys.length);
+        CASTKeySet schedule = CAST384.SCHEDULE;
+        int groups = (keys.length + LANES - 1) / LANES;
+
+        IntStream range = IntStream.range(0, groups);
+        if (parallel) {
+            range = range.parallel();
+        }
+        range.forEach(g -> batch.expandGroup(keys, g * LANES, schedule.getM(), schedule.getR()));
+        return batch;
+    }
+
+    /**
+     * @return the number of keys in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the masking keys of the whole batch; round key r of key i is at
+     * r * size() + i. The array is not copied.
+     */
+    public int[] getM() {
+        return km;
+    }
+
+    /**
+     * Returns the rotation keys of the whole batch, laid out as getM(). The array is
+     * not copied.
+     */
+    public int[] getR() {
+        return kr;
+    }
+
+    /**
+     * Copies the round keys of one key out of the batch.
+     *
+     * @param key index of the key
+     * @return a new CASTKeySet with the 72 masking and 72 rotation keys
+     */
+    public CASTKeySet keySet(int key) {
+        Objects.checkIndex(key, size);
+        int[] m = new int[ROUND_KEYS];
+        int[] r = new int[ROUND_KEYS];
+        for (int k = 0, i = key; k < ROUND_KEYS; k++, i += size) {
+            m[k] = km[i];
+            r[k] = kr[i];
+        }
+        return new CASTKeySet(m, r);
+    }
+
+    /**
+     * Encrypts size() consecutive blocks, block i under key i.
+     *
+     * @param in     source buffer
+     * @param inOff  offset of the first plaintext block
+     * @param out    destination buffer (may be in when inOff == outOff)
+     * @param outOff offset of the first ciphertext block
+     */
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff) {
+        encryptBlocks(0, in, inOff, out, outOff, size);
+    }
+
+    /**
+     * Encrypts blockCount consecutive blocks, block n under key first + n.
+     *
+     * @param first      index of the key for the first block
+     * @param in         source buffer
+     * @param inOff      offset of the first plaintext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first ciphertext block
+     * @param blockCount number of 24-byte blocks to encrypt
+     */
+    public void encryptBlocks(int first, byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        checkBlocks(first, in, inOff, out, outOff, blockCount);
+        engine().encryptBlocks(first, in, inOff, out, outOff, blockCount);
+    }
+
+    /**
+     * Decrypts size() consecutive blocks, block i under key i.
+     *
+     * @param in     source buffer
+     * @param inOff  offset of the first ciphertext block
+     * @param out    destination buffer (may be in when inOff == outOff)
+     * @param outOff offset of the first plaintext block
+     */
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff) {
+        decryptBlocks(0, in, inOff, out, outOff, size);
+    }
+
+    /**
+     * Decrypts blockCount consecutive blocks, block n under key first + n.
+     *
+     * @param first      index of the key for the first block
+     * @param in         source buffer
+     * @param inOff      offset of the first ciphertext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first plaintext block
+     * @param blockCount number of 24-byte blocks to decrypt
+     */
+    public void decryptBlocks(int first, byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        checkBlocks(first, in, inOff, out, outOff, blockCount);
+        engine().decryptBlocks(first, in, inOff, out, outOff, blockCount);
+    }
+
+    private MultiKeyEngine engine() {
+        MultiKeyEngine e = engine;
+        if (e == null) {
+            engine = e = new MultiKeyEngine(km, kr, size);
+        }
+        return e;
+    }
+
+    private void checkBlocks(int first, byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        if (blockCount < 0) {
+            throw new IllegalArgumentException("Block count must not be negative");
+        }
+        Objects.checkFromIndexSize(first, blockCount, size);
+        int len = Math.multiplyExact(blockCount, BLOCK_BYTES);
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+    }
+
+    /**
+     * Expands keys first .. first + LANES - 1 (fewer at the end of the batch).
+     */
+    private void expandGroup(byte[][] keys, int first, int[] Tm, int[] Tr) {
+        int n = Math.min(LANES, size - first);
+        int[][] kappa = new int[KEY_WORDS][n];       // Word w of key l is kappa[w][l]
+
+        for (int l = 0; l < n; l++) {
+            byte[] key = keys[first + l];
+            for (int w = 0; w < KEY_WORDS; w++) {
+                int v = 0;
+                for (int b = 0; b < 4; b++) {
+                    int i = w * 4 + b;
+                    v = (v << 8) | (i < key.length && i < KEY_BYTES ? key[i] & 0xFF : 0);
+                }
+                kappa[w][l] = v;
+            }
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int d = 0; d < DODECAD_COUNT; d++) {
+                dodecad(kappa, n, Tm, Tr, (round * DODECAD_COUNT + d) * KEY_WORDS);
+            }
+
+            // Same extraction as CAST384.generateRoundKeys: Km from L, J, H, F, D, B
+            // and Kr from A, C, E, G, I, K
+            for (int j = 0; j < 6; j++) {
+                int base = (round * 6 + j) * size + first;
+                int[] m = kappa[11 - 2 * j];
+                int[] r = kappa[2 * j];
+                for (int l = 0; l < n; l++) {
+                    km[base + l] = m[l];
+                    kr[base + l] = r[l] & 0x1F;
+                }
+            }
+        }
+    }
+
+    /**
+     * CAST384.dodecad applied step by step across n keys.
+     */
+    private static void dodecad(int[][] k, int n, int[] Tm, int[] Tr, int idx) {
+        for (int l = 0; l < n; l++) k[10][l] ^= f1(k[11][l], Tm[idx], Tr[idx]);
+        for (int l = 0; l < n; l++) k[9][l] ^= f2(k[10][l], Tm[idx + 1], Tr[idx + 1]);
+        for (int l = 0; l < n; l++) k[8][l] ^= f3(k[9][l], Tm[idx + 2], Tr[idx + 2]);
+        for (int l = 0; l < n; l++) k[7][l] ^= f4(k[8][l], Tm[idx + 3], Tr[idx + 3]);
+        for (int l = 0; l < n; l++) k[6][l] ^= f5(k[7][l], Tm[idx + 4], Tr[idx + 4]);
+        for (int l = 0; l < n; l++) k[5][l] ^= f6(k[6][l], Tm[idx + 5], Tr[idx + 5]);
+        for (int l = 0; l < n; l++) k[4][l] ^= f1(k[5][l], Tm[idx + 6], Tr[idx + 6]);
+        for (int l = 0; l < n; l++) k[3][l] ^= f2(k[4][l], Tm[idx + 7], Tr[idx + 7]);
+        for (int l = 0; l < n; l++) k[2][l] ^= f3(k[3][l], Tm[idx + 8], Tr[idx + 8]);
+        for (int l = 0; l < n; l++) k[1][l] ^= f4(k[2][l], Tm[idx + 9], Tr[idx + 9]);
+        for (int l = 0; l < n; l++) k[0][l] ^= f5(k[1][l], Tm[idx + 10], Tr[idx + 10]);
+        for (int l = 0; l < n; l++) k[11][l] ^= f6(k[0][l], Tm[idx + 11], Tr[idx + 11]);
+    }
+}
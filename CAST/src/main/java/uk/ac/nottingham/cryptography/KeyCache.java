@@ -0,0 +1,275 @@
+package uk.ac.nottingham.cryptography;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe, size-bounded cache of expanded CAST-384 round keys.
+ * <p>
+ * How it works:
+ * Entries are keyed by the user key zero-padded to 48 bytes, the form initialise
+ * expands, and compared with MessageDigest.isEqual, which takes the same time however
+ * many bytes match. The map is a ConcurrentHashMap, so a hit takes no lock: it stamps
+ * the entry with the time it was used and copies the round keys out under an
+ * optimistic read of the entry's StampedLock. Eviction is approximate LRU: once the
+ * capacity is exceeded, the thread that added the entry samples the next few distinct
+ * live entries from a hand that walks round the map, wrapping at most once, and evicts
+ * the one used longest ago. Evictions
+ * are serialised by their own lock, which only misses take. An evicted entry is
+ * removed from the map, then write-locked for good and zeroed, so a copy that
+ * overlapped the zeroing fails validation and is treated as a miss. The cached arrays
+ * never leave the cache: initialise copies them into the cipher's own round-key
+ * arrays (no allocation once the cipher has rekeyed before) and get returns a copy.
+ * On a miss the key is expanded outside any lock.
+ */
+public final class KeyCache {
+
+    private static final int KEY_BYTES = 48;
+    // Entries looked at per eviction; below this capacity every entry is, so eviction is exact LRU
+    private static final int SAMPLE = 8;
+
+    private final int capacity;
+    private final ConcurrentHashMap<CacheKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Object evictionLock = new Object();
+    private Iterator<Entry> hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity maximum number of expanded keys held
+     */
+    public KeyCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Keys the cipher with key, reusing the cached expansion when there is one.
+     *
+     * @param cipher the cipher to key
+     * @param key    the user key, as passed to initialise
+     */
+    public void initialise(CAST384 cipher, byte[] key) {
+        CacheKey lookup = new CacheKey(key);
+        Entry cached = entries.get(lookup);
+        if (cached != null) {
+            long stamp = cached.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                cached.used = System.nanoTime();
+                cipher.loadRoundKeys(cached.keys.getM(), cached.keys.getR());
+                if (cached.lock.validate(stamp)) {
+                    hits.increment();
+                    lookup.clear();
+                    return;
+                }
+            }
+        }
+
+        // A torn copy from an entry evicted mid-read is overwritten here
+        misses.increment();
+        cipher.initialise(lookup.bytes);
+        CASTKeySet keys = cipher.getK();
+        put(lookup, new CASTKeySet(keys.getM().clone(), keys.getR().clone()));
+    }
+
+    /**
+     * Returns the round keys for key, expanding and caching them on a miss.
+     *
+     * @param key the user key, as passed to initialise
+     * @return a copy of the round keys, owned by the caller
+     */
+    public CASTKeySet get(byte[] key) {
+        CacheKey lookup = new CacheKey(key);
+        Entry cached = entries.get(lookup);
+        if (cached != null) {
+            long stamp = cached.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                cached.used = System.nanoTime();
+                CASTKeySet copy = new CASTKeySet(cached.keys.getM().clone(), cached.keys.getR().clone());
+                if (cached.lock.validate(stamp)) {
+                    hits.increment();
+                    lookup.clear();
+                    return copy;
+                }
+                zero(copy);
+            }
+        }
+
+        misses.increment();
+        CAST384 cipher = new CAST384();
+        cipher.initialise(lookup.bytes);
+        CASTKeySet keys = cipher.getK();
+        put(lookup, new CASTKeySet(keys.getM().clone(), keys.getR().clone()));
+        return keys;
+    }
+
+    private void put(CacheKey key, CASTKeySet keys) {
+        // Another thread may have expanded the same key meanwhile; keep the first copy
+        if (entries.putIfAbsent(key, new Entry(key, keys)) != null) {
+            key.clear();
+            zero(keys);
+            return;
+        }
+        if (entries.size() > capacity) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            Entry[] sample = new Entry[SAMPLE];
+            while (entries.size() > capacity) {
+                int wanted = Math.min(entries.size(), SAMPLE);
+                int taken = 0;
+                boolean wrapped = false;
+                Entry oldest = null;
+                while (taken < wanted) {
+                    if (hand == null || !hand.hasNext()) {
+                        // A second wrap means every live entry has been looked at
+                        if (wrapped) {
+                            break;
+                        }
+                        hand = entries.values().iterator();
+                        wrapped = true;
+                        continue;
+                    }
+                    Entry candidate = hand.next();
+                    if (candidate.lock.isWriteLocked() || sampled(sample, taken, candidate)) {
+                        continue;
+                    }
+                    sample[taken++] = candidate;
+                    if (oldest == null || candidate.used - oldest.used < 0) {
+                        oldest = candidate;
+                    }
+                }
+                Arrays.fill(sample, null);
+                if (oldest == null) {
+                    return;
+                }
+                if (entries.remove(oldest.key, oldest)) {
+                    retire(oldest);
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private static boolean sampled(Entry[] sample, int taken, Entry candidate) {
+        for (int i = 0; i < taken; i++) {
+            if (sample[i] == candidate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every entry, zeroing its round keys. Counters are left unchanged.
+     */
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            if (entries.remove(entry.key, entry)) {
+                retire(entry);
+            }
+        }
+    }
+
+    /**
+     * @return the number of keys currently cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maximum number of keys held
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to expand the key
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries dropped to stay within the capacity
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Zeroes an entry that is no longer in the map. The write lock is never released,
+     * so every later optimistic read of it fails.
+     */
+    private static void retire(Entry entry) {
+        entry.lock.writeLock();
+        entry.key.clear();
+        zero(entry.keys);
+    }
+
+    private static void zero(CASTKeySet keys) {
+        Arrays.fill(keys.getM(), 0);
+        Arrays.fill(keys.getR(), 0);
+    }
+
+    private static final class Entry {
+        final CacheKey key;
+        final CASTKeySet keys;
+        final StampedLock lock = new StampedLock();
+        volatile long used = System.nanoTime();
+
+        Entry(CacheKey key, CASTKeySet keys) {
+            this.key = key;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * A user key padded to 48 bytes. The hash is computed once, so clearing the bytes
+     * of an entry that is being removed does not disturb the map.
+     */
+    private static final class CacheKey {
+        final byte[] bytes;
+        private final int hash;
+
+        CacheKey(byte[] key) {
+            this.bytes = Arrays.copyOf(key, KEY_BYTES);
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        void clear() {
+            Arrays.fill(bytes, (byte) 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CacheKey && MessageDigest.isEqual(bytes, ((CacheKey) o).bytes);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package uk.ac.nottingham.cryptography;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Dense, memory-mapped store of expanded CAST-384 keys addressed by integer id.
+ * <p>
+ * How it works:
+ * The file is a 64-byte header followed by one fixed-size record per id, so the
+ * record of id i is found by arithmetic alone. A record is
+ *   - a status word (bit 0: being written, bit 1: present, upper bits: version)
+ *   - 4 bytes of padding
+ *   - the 72 masking keys as 32-bit little-endian words
+ *   - the 72 rotation keys packed 5 bits each, twelve to a long, in 6 longs
+ * which is 344 bytes per key. The records are mapped in chunks of 2^20 ids (a
+ * MappedByteBuffer is limited to 2 GB), so the expanded keys live outside the Java
+ * heap and survive a restart: a reopened ring serves them without running the key
+ * schedule again.
+ * <p>
+ * Readers take no lock. Each record works like a seqlock: a writer sets the "being
+ * written" bit, writes the keys, then publishes a new version with a release store.
+ * A reader that sees the bit set, or a different status after reading, retries.
+ * Writers are serialised on the ring. initialise reads into a per-thread scratch key
+ * set and only copies into the cipher once a consistent record has been read. The
+ * header records whether the ring was
+ * closed cleanly; if not, open() scans for records a dead process left half-written
+ * and clears them.
+ */
+public final class KeyRing implements Closeable {
+
+    private static final long MAGIC = 0x474E495233384B43L;   // "CK83RING", little-endian
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int DIRTY_OFFSET = 20;      // Header int: 1 while a writer has the ring open
+
+    private static final int KM_OFFSET = 8;
+    private static final int KR_OFFSET = KM_OFFSET + 72 * 4;
+    private static final int RECORD_BYTES = KR_OFFSET + 6 * 8;     // 344
+
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private static final int WRITING = 1;
+    private static final int PRESENT = 2;
+    private static final int VERSION_STEP = 4;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] chunks;
+    private final int capacity;
+    private boolean dirty;                           // Header marked dirty since opening
+    private boolean closed;
+
+    // Where initialise reads a record before anything touches the cipher
+    private final ThreadLocal<CASTKeySet> scratch =
+            ThreadLocal.withInitial(() -> new CASTKeySet(new int[72], new int[72]));
+
+    private KeyRing(FileChannel channel, int capacity) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.chunks = new MappedByteBuffer[(int) (((long) capacity + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < chunks.length; c++) {
+            long first = (long) c << CHUNK_SHIFT;
+            long records = Math.min(1L << CHUNK_SHIFT, capacity - first);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + first * RECORD_BYTES, records * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Creates a new, empty ring file with room for ids 0 .. capacity - 1.
+     *
+     * @param file     the file to create; it must not exist
+     * @param capacity number of ids
+     * @return the open ring
+     * @throws IOException if the file exists or cannot be written
+     */
+    public static KeyRing create(Path file, int capacity) throws IOException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(RECORD_BYTES).putInt(capacity).clear();
+            channel.write(header, 0);
+            return new KeyRing(channel, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing ring file.
+     *
+     * @param file a file written by create
+     * @return the open ring
+     * @throws IOException if the file cannot be read or is not a key ring
+     */
+    public static KeyRing open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC
+                    || header.getInt() != FORMAT_VERSION || header.getInt() != RECORD_BYTES) {
+                throw new IOException("Not a CAST-384 key ring: " + file);
+            }
+            int capacity = header.getInt();
+            if (capacity < 0 || channel.size() < HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+                throw new IOException("Truncated CAST-384 key ring: " + file);
+            }
+
+            KeyRing ring = new KeyRing(channel, capacity);
+            if ((int) INT.get(ring.header, DIRTY_OFFSET) != 0) {
+                ring.discardIncompleteWrites();
+            }
+            return ring;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of ids the ring holds
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Expands key and stores it under id, replacing any earlier key.
+     *
+     * @param id  the key id
+     * @param key the user key, as passed to CAST384.initialise
+     * @throws IllegalStateException if the ring has been closed
+     */
+    public void put(int id, byte[] key) {
+        CAST384 cipher = new CAST384();
+        cipher.initialise(key);
+        put(id, cipher.getK());
+    }
+
+    /**
+     * Stores expanded round keys under id, replacing any earlier key.
+     *
+     * @param id   the key id
+     * @param keys 72 masking and 72 rotation keys
+     * @throws IllegalStateException if the ring has been closed
+     */
+    public synchronized void put(int id, CASTKeySet keys) {
+        int[] m = keys.getM();
+        int[] r = keys.getR();
+        if (m.length != 72 || r.length != 72) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+        ensureOpen();
+        ByteBuffer chunk = chunk(id);
+        int base = offset(id);
+
+        int status = beginWrite(chunk, base);
+        for (int i = 0; i < 72; i++) {
+            INT.set(chunk, base + KM_OFFSET + 4 * i, m[i]);
+        }
+        for (int j = 0; j < 6; j++) {
+            long packed = 0;
+            for (int i = 0; i < 12; i++) {
+                packed |= (long) (r[12 * j + i] & 0x1F) << (5 * i);
+            }
+            LONG.set(chunk, base + KR_OFFSET + 8 * j, packed);
+        }
+        endWrite(chunk, base, status, true);
+    }
+
+    /**
+     * Removes the key stored under id, zeroing its record.
+     *
+     * @param id the key id
+     * @throws IllegalStateException if the ring has been closed
+     */
+    public synchronized void remove(int id) {
+        ensureOpen();
+        ByteBuffer chunk = chunk(id);
+        int base = offset(id);
+        endWrite(chunk, base, beginWrite(chunk, base), false);
+    }
+
+    /**
+     * @param id the key id
+     * @return true if a key is stored under id
+     */
+    public boolean contains(int id) {
+        ByteBuffer chunk = chunk(id);
+        int base = offset(id);
+        int status;
+        while (((status = (int) INT.getAcquire(chunk, base)) & WRITING) != 0) {
+            Thread.onSpinWait();
+        }
+        return (status & PRESENT) != 0;
+    }
+
+    /**
+     * Returns a copy of the round keys stored under id.
+     *
+     * @param id the key id
+     * @return the round keys, or null if no key is stored under id
+     */
+    public CASTKeySet get(int id) {
+        int[] m = new int[72];
+        int[] r = new int[72];
+        return read(id, m, r) ? new CASTKeySet(m, r) : null;
+    }
+
+    /**
+     * Keys the cipher with the round keys stored under id, copying them into the
+     * cipher's own arrays (see CAST384.rekey) without allocating.
+     *
+     * @param cipher the cipher to key
+     * @param id     the key id
+     * @return false if no key is stored under id, in which case the cipher is unchanged
+     */
+    public boolean initialise(CAST384 cipher, int id) {
+        CASTKeySet read = scratch.get();
+        if (!read(id, read.getM(), read.getR())) {
+            return false;
+        }
+        CASTKeySet keys = cipher.ownedKeys();
+        System.arraycopy(read.getM(), 0, keys.getM(), 0, 72);
+        System.arraycopy(read.getR(), 0, keys.getR(), 0, 72);
+        cipher.installOwned(keys);
+        return true;
+    }
+
+    /**
+     * Writes any changes through to the file.
+     */
+    public void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    /**
+     * Forces outstanding changes, marks the ring clean and closes the file. The
+     * mappings themselves are released when the ring is garbage collected. Keys can
+     * still be read afterwards, but put and remove throw IllegalStateException.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        force();
+        if (dirty) {
+            INT.set(header, DIRTY_OFFSET, 0);
+            header.force();
+            dirty = false;
+        }
+        channel.close();
+    }
+
+    private boolean read(int id, int[] m, int[] r) {
+        ByteBuffer chunk = chunk(id);
+        int base = offset(id);
+
+        for (;;) {
+            int status = (int) INT.getAcquire(chunk, base);
+            if ((status & WRITING) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if ((status & PRESENT) == 0) {
+                return false;
+            }
+
+            for (int i = 0; i < 72; i++) {
+                m[i] = (int) INT.get(chunk, base + KM_OFFSET + 4 * i);
+            }
+            for (int j = 0; j < 6; j++) {
+                long packed = (long) LONG.get(chunk, base + KR_OFFSET + 8 * j);
+                for (int i = 0; i < 12; i++) {
+                    r[12 * j + i] = (int) (packed >>> (5 * i)) & 0x1F;
+                }
+            }
+
+            VarHandle.loadLoadFence();
+            if ((int) INT.getAcquire(chunk, base) == status) {
+                return true;
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Key ring has been closed");
+        }
+    }
+
+    private int beginWrite(ByteBuffer chunk, int base) {
+        if (!dirty) {
+            INT.set(header, DIRTY_OFFSET, 1);
+            header.force();
+            dirty = true;
+        }
+        int status = (int) INT.get(chunk, base);
+        INT.set(chunk, base, status | WRITING);
+        VarHandle.storeStoreFence();    // Readers must see the flag before any key word
+        return status;
+    }
+
+    private static void endWrite(ByteBuffer chunk, int base, int status, boolean present) {
+        if (!present) {
+            for (int i = KM_OFFSET; i < RECORD_BYTES; i += 8) {
+                LONG.set(chunk, base + i, 0L);
+            }
+        }
+        int next = ((status & ~(WRITING | PRESENT)) + VERSION_STEP) | (present ? PRESENT : 0);
+        INT.setRelease(chunk, base, next);
+    }
+
+    private void discardIncompleteWrites() {
+        for (int id = 0; id < capacity; id++) {
+            ByteBuffer chunk = chunk(id);
+            int base = offset(id);
+            int status = (int) INT.get(chunk, base);
+            if ((status & WRITING) != 0) {
+                endWrite(chunk, base, status, false);
+            }
+        }
+    }
+
+    private ByteBuffer chunk(int id) {
+        Objects.checkIndex(id, capacity);
+        return chunks[id >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int id) {
+        return (id & CHUNK_MASK) * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,242 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.Cleaner;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer, single-consumer ring of CTR keystream filled by a background thread.
+ * <p>
+ * How it works:
+ * The ring holds keystream for consecutive counters starting at block base.
+ * Positions are byte offsets from the start of block base that only grow: the
+ * producer publishes tail after writing keystream up to it, and the consumer
+ * publishes head once it has used the bytes below it. Byte p lives at index
+ * p % capacity, so the bytes in [head, tail) are ready and everything else is free.
+ * The producer writes whole runs of chunk-sized batches that never wrap, straight
+ * from its own counter blocks into the ring with one encryptBlocks call. The
+ * consumer (CTRMode) XORs directly out of the ring.
+ * <p>
+ * The producer fills the ring completely, then parks until the consumer has drained
+ * it below the refill threshold, so it works in bursts rather than once per message.
+ * A consumer that finds the ring empty parks until the producer publishes more.
+ * Each side's park is paired with a flag the other side checks after publishing
+ * its position, so neither can miss a wake-up. The producer owns the cipher from
+ * start until stop() returns.
+ * <p>
+ * The producer thread only references the prefetcher, never its owner, so an owner
+ * dropped without stopping it can still be collected; stopWhenUnreachable registers
+ * stop() with a Cleaner for that case.
+ */
+final class KeystreamPrefetcher {
+
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Cipher cipher;
+    private final int blockSize;
+    private final long base;                 // Counter of the block at position 0
+    private final byte[] ring;
+    private final byte[] counters;           // Producer's counter blocks, nonce prefilled
+    private final int chunkBytes;            // Runs are whole multiples of this
+    private final long refillBelow;          // Producer wakes when fewer bytes are ready
+    private final Thread producer;
+
+    private volatile long head;              // Written by the consumer
+    private volatile long tail;              // Written by the producer
+    private volatile boolean running = true;
+    private volatile boolean producerParked;
+    private volatile Thread waiter;          // Consumer parked on an empty ring
+    private volatile Throwable failure;
+
+    /**
+     * Starts a producer generating keystream from block first. The consumer's
+     * position starts skip bytes into that block.
+     *
+     * @param cipher      keyed cipher, used only by the producer until stop()
+     * @param nonce       the CTR nonce
+     * @param blockSize   cipher block size in bytes
+     * @param ringBlocks  ring capacity in blocks, a multiple of chunkBlocks
+     * @param chunkBlocks blocks per cipher batch
+     * @param refillBelow refill once fewer than this many blocks are ready
+     * @param factory     creates the producer thread
+     * @param first       counter of the first block
+     * @param skip        bytes of the first block already used
+     */
+    KeystreamPrefetcher(Cipher cipher, byte[] nonce, int blockSize, int ringBlocks, int chunkBlocks,
+                        int refillBelow, ThreadFactory factory, long first, int skip) {
+        this.cipher = cipher;
+        this.blockSize = blockSize;
+        this.base = first;
+        this.ring = new byte[ringBlocks * blockSize];
+        this.chunkBytes = chunkBlocks * blockSize;
+        this.refillBelow = (long) refillBelow * blockSize;
+        this.counters = new byte[Math.min(ringBlocks, CTRMode.BULK_BLOCKS / chunkBlocks * chunkBlocks) * blockSize];
+        int nonceLen = blockSize - 8;
+        for (int b = 0; b < counters.length; b += blockSize) {
+            for (int i = 0; i < nonceLen; i++) {
+                counters[b + i] = i < nonce.length ? nonce[i] : 0;
+            }
+        }
+        this.head = skip;
+
+        this.producer = factory.newThread(this::produce);
+        producer.start();
+    }
+
+    byte[] buffer() {
+        return ring;
+    }
+
+    int index(long position) {
+        return (int) (position % ring.length);
+    }
+
+    /**
+     * Counter of the block holding position and the offset of position in it.
+     */
+    long block(long position) {
+        return base + position / blockSize;
+    }
+
+    int offset(long position) {
+        return (int) (position % blockSize);
+    }
+
+    /**
+     * Waits until keystream at position is ready.
+     *
+     * @return the number of ready bytes from position to the end of the ring or of the
+     *         ready data, whichever comes first
+     */
+    int await(long position) {
+        long t = tail;
+        if (t <= position) {
+            waiter = Thread.currentThread();
+            try {
+                while ((t = tail) <= position) {
+                    Throwable f = failure;
+                    if (f != null) {
+                        throw new IllegalStateException("Keystream prefetch failed", f);
+                    }
+                    wakeProducer();
+                    LockSupport.park(this);
+                }
+            } finally {
+                waiter = null;
+            }
+        }
+        return (int) Math.min(t - position, ring.length - index(position));
+    }
+
+    /**
+     * Hands the bytes below position back to the producer.
+     */
+    void release(long position) {
+        head = position;
+        if (producerParked && tail - position < refillBelow) {
+            wakeProducer();
+        }
+    }
+
+    /**
+     * Arranges for stop() to run once owner is unreachable. The returned Cleanable
+     * runs stop() at most once, so the owner should stop through its clean().
+     */
+    Cleaner.Cleanable stopWhenUnreachable(Object owner) {
+        return CLEANER.register(owner, this::stop);
+    }
+
+    /**
+     * Stops the producer and waits for it to exit, after which the caller owns the
+     * cipher again.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(producer);
+        boolean interrupted = false;
+        while (producer.isAlive()) {
+            try {
+                producer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void wakeProducer() {
+        LockSupport.unpark(producer);
+    }
+
+    private void produce() {
+        try {
+            boolean filling = true;      // Within a burst: keep going until the ring is full
+            while (running) {
+                long t = tail;
+                long ready = t - head;
+                int run = run(t, ready);
+                if (run > 0 && (filling || ready < refillBelow)) {
+                    filling = true;
+                    fill(t, run);
+                } else {
+                    filling = false;
+                    park();
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+            Thread w = waiter;
+            if (w != null) {
+                LockSupport.unpark(w);
+            }
+        }
+    }
+
+    /**
+     * Free bytes from t to the end of the ring, in whole chunks and at most one
+     * counter buffer. Tail only moves in chunks, so this is 0 only when the ring has
+     * less than a chunk free.
+     */
+    private int run(long t, long ready) {
+        long free = Math.min(ring.length - ready, ring.length - index(t));
+        return (int) Math.min(free / chunkBytes * chunkBytes, counters.length);
+    }
+
+    /**
+     * Writes run bytes of keystream at position t and publishes them.
+     */
+    private void fill(long t, int run) {
+        final byte[] c = counters;
+        long next = block(t);
+        for (int b = blockSize - 8; b < run; b += blockSize) {
+            LONG_BE.set(c, b, next++);
+        }
+        cipher.encryptBlocks(c, 0, ring, index(t), run / blockSize);
+
+        tail = t + run;
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * Parks until the consumer has drained the ring below the refill threshold. The
+     * flag is set before re-checking, so a release in between is not missed.
+     */
+    private void park() {
+        producerParked = true;
+        long t = tail;
+        long ready = t - head;
+        if (running && (ready >= refillBelow || run(t, ready) == 0)) {
+            LockSupport.park(this);
+        }
+        producerParked = false;
+    }
+}
@@ -0,0 +1,127 @@
+package uk.ac.nottingham.cryptography;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.INT_BE;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f1;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f2;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f3;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f4;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f5;
+import static uk.ac.nottingham.cryptography.ScalarEngine.f6;
+
+/**
+ * CAST-384 engine that encrypts each block under its own key.
+ * <p>
+ * How it works:
+ * The round keys come from a KeyBatch buffer, where round key r of key i is at
+ * r * stride + i. Block n is processed with key first + n. As in InterleavedEngine,
+ * LANES consecutive blocks run in round-lockstep so their S-box lookups overlap; here
+ * the lanes also read consecutive keys, which for every step are adjacent in the key
+ * arrays. A final partial group runs with fewer lanes. The lane arrays are allocated
+ * once per call.
+ */
+final class MultiKeyEngine {
+
+    static final int LANES = 4;
+
+    private final int[] km;
+    private final int[] kr;
+    private final int stride;
+
+    /**
+     * @param Km     masking keys in KeyBatch layout
+     * @param Kr     rotation keys in KeyBatch layout
+     * @param stride number of keys in the batch
+     */
+    MultiKeyEngine(int[] Km, int[] Kr, int stride) {
+        this.km = Km;
+        this.kr = Kr;
+        this.stride = stride;
+    }
+
+    void encryptBlocks(int first, byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        int[] a = new int[LANES], b = new int[LANES], c = new int[LANES];
+        int[] d = new int[LANES], e = new int[LANES], f = new int[LANES];
+
+        for (int done = 0; done < blockCount; done += LANES) {
+            int n = Math.min(LANES, blockCount - done);
+            int key = first + done;
+            int off = done * BLOCK_BYTES;
+            load(in, inOff + off, n, a, b, c, d, e, f);
+            for (int k = 0; k < 36; k += 6) {
+                hexad(a, b, c, d, e, f, k, key, n);       // Rounds 0 to 5
+            }
+            for (int k = 36; k < 72; k += 6) {
+                hexadInv(a, b, c, d, e, f, k, key, n);    // Rounds 6 to 11
+            }
+            store(out, outOff + off, n, a, b, c, d, e, f);
+        }
+    }
+
+    void decryptBlocks(int first, byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        int[] a = new int[LANES], b = new int[LANES], c = new int[LANES];
+        int[] d = new int[LANES], e = new int[LANES], f = new int[LANES];
+
+        for (int done = 0; done < blockCount; done += LANES) {
+            int n = Math.min(LANES, blockCount - done);
+            int key = first + done;
+            int off = done * BLOCK_BYTES;
+            load(in, inOff + off, n, a, b, c, d, e, f);
+            for (int k = 66; k >= 36; k -= 6) {
+                hexad(a, b, c, d, e, f, k, key, n);       // Rounds 11 to 6
+            }
+            for (int k = 30; k >= 0; k -= 6) {
+                hexadInv(a, b, c, d, e, f, k, key, n);    // Rounds 5 to 0
+            }
+            store(out, outOff + off, n, a, b, c, d, e, f);
+        }
+    }
+
+    private void hexad(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int k, int key, int n) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        final int s = stride;
+        int i0 = k * s + key, i1 = i0 + s, i2 = i1 + s, i3 = i2 + s, i4 = i3 + s, i5 = i4 + s;
+        for (int l = 0; l < n; l++) e[l] ^= f1(f[l], km[i0 + l], kr[i0 + l]);
+        for (int l = 0; l < n; l++) d[l] ^= f2(e[l], km[i1 + l], kr[i1 + l]);
+        for (int l = 0; l < n; l++) c[l] ^= f3(d[l], km[i2 + l], kr[i2 + l]);
+        for (int l = 0; l < n; l++) b[l] ^= f4(c[l], km[i3 + l], kr[i3 + l]);
+        for (int l = 0; l < n; l++) a[l] ^= f5(b[l], km[i4 + l], kr[i4 + l]);
+        for (int l = 0; l < n; l++) f[l] ^= f6(a[l], km[i5 + l], kr[i5 + l]);
+    }
+
+    private void hexadInv(int[] a, int[] b, int[] c, int[] d, int[] e, int[] f, int k, int key, int n) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        final int s = stride;
+        int i0 = k * s + key, i1 = i0 + s, i2 = i1 + s, i3 = i2 + s, i4 = i3 + s, i5 = i4 + s;
+        for (int l = 0; l < n; l++) f[l] ^= f6(a[l], km[i5 + l], kr[i5 + l]);
+        for (int l = 0; l < n; l++) a[l] ^= f5(b[l], km[i4 + l], kr[i4 + l]);
+        for (int l = 0; l < n; l++) b[l] ^= f4(c[l], km[i3 + l], kr[i3 + l]);
+        for (int l = 0; l < n; l++) c[l] ^= f3(d[l], km[i2 + l], kr[i2 + l]);
+        for (int l = 0; l < n; l++) d[l] ^= f2(e[l], km[i1 + l], kr[i1 + l]);
+        for (int l = 0; l < n; l++) e[l] ^= f1(f[l], km[i0 + l], kr[i0 + l]);
+    }
+
+    private static void load(byte[] in, int off, int n, int[] a, int[] b, int[] c, int[] d, int[] e, int[] f) {
+        for (int l = 0; l < n; l++, off += BLOCK_BYTES) {
+            a[l] = (int) INT_BE.get(in, off);
+            b[l] = (int) INT_BE.get(in, off + 4);
+            c[l] = (int) INT_BE.get(in, off + 8);
+            d[l] = (int) INT_BE.get(in, off + 12);
+            e[l] = (int) INT_BE.get(in, off + 16);
+            f[l] = (int) INT_BE.get(in, off + 20);
+        }
+    }
+
+    private static void store(byte[] out, int off, int n, int[] a, int[] b, int[] c, int[] d, int[] e, int[] f) {
+        for (int l = 0; l < n; l++, off += BLOCK_BYTES) {
+            INT_BE.set(out, off, a[l]);
+            INT_BE.set(out, off + 4, b[l]);
+            INT_BE.set(out, off + 8, c[l]);
+            INT_BE.set(out, off + 12, d[l]);
+            INT_BE.set(out, off + 16, e[l]);
+            INT_BE.set(out, off + 20, f[l]);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package uk.ac.nottingham.cryptography;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.INT_BE;
+import static uk.ac.nottingham.cryptography.ScalarEngine.ROUND_KEYS;
+
+/**
+ * Scalar CAST-384 engine that reads all four S-boxes from one packed 4 KB table.
+ * <p>
+ * How it works:
+ * S1..S4 are copied into a single int[1024] laid out as box * 256 + byte, so the
+ * tables occupy one contiguous run of 64 cache lines with a single object header
+ * instead of four separate arrays. Every index is built as (box &lt;&lt; 8) | byte, which
+ * the JIT can prove lies inside the constant-length table, so the lookups carry no
+ * bounds checks. The round structure is that of ScalarEngine, written as two loops of
+ * hexads with A..F in locals.
+ * <p>
+ * DirectSboxEngine is this engine constructed with the DIRECT layout, so both share
+ * the one encrypt and one decrypt body below. The layout is a final field passed to
+ * the F-functions, and only sbox() looks at it. The branch goes the same way for the
+ * whole call, so it predicts perfectly and costs nothing measurable against the
+ * table loads.
+ * <p>
+ * Java does not expose the alignment of heap arrays; DirectSboxEngine keeps the same
+ * layout in a 64-byte aligned off-heap block.
+ */
+class PackedSboxEngine implements BlockEngine {
+
+    // S-box layouts understood by the F-functions below
+    static final int PACKED = 0;               // T
+    static final int DIRECT = 1;               // DirectSboxEngine.TABLE
+
+    static final int[] T = pack();
+
+    private final int[] km;
+    private final int[] kr;
+    private final int layout;                  // PACKED or DIRECT
+
+    PackedSboxEngine(int[] Km, int[] Kr) {
+        this(Km, Kr, PACKED);
+    }
+
+    PackedSboxEngine(int[] Km, int[] Kr, int layout) {
+        if (Km.length != ROUND_KEYS || Kr.length != ROUND_KEYS) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+        this.km = Km;
+        this.kr = Kr;
+        this.layout = layout;
+    }
+
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        final int s = this.layout;
+
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) INT_BE.get(in, inOff);
+            int b = (int) INT_BE.get(in, inOff + 4);
+            int c = (int) INT_BE.get(in, inOff + 8);
+            int d = (int) INT_BE.get(in, inOff + 12);
+            int e = (int) INT_BE.get(in, inOff + 16);
+            int f = (int) INT_BE.get(in, inOff + 20);
+
+            for (int k = 0; k < 36; k += 6) {       // Rounds 0 to 5: hexad
+                e ^= f1(s, f, km[k], kr[k]);
+                d ^= f2(s, e, km[k + 1], kr[k + 1]);
+                c ^= f3(s, d, km[k + 2], kr[k + 2]);
+                b ^= f4(s, c, km[k + 3], kr[k + 3]);
+                a ^= f5(s, b, km[k + 4], kr[k + 4]);
+                f ^= f6(s, a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 36; k < 72; k += 6) {      // Rounds 6 to 11: hexadInv
+                f ^= f6(s, a, km[k + 5], kr[k + 5]);
+                a ^= f5(s, b, km[k + 4], kr[k + 4]);
+                b ^= f4(s, c, km[k + 3], kr[k + 3]);
+                c ^= f3(s, d, km[k + 2], kr[k + 2]);
+                d ^= f2(s, e, km[k + 1], kr[k + 1]);
+                e ^= f1(s, f, km[k], kr[k]);
+            }
+
+            INT_BE.set(out, outOff, a);
+            INT_BE.set(out, outOff + 4, b);
+            INT_BE.set(out, outOff + 8, c);
+            INT_BE.set(out, outOff + 12, d);
+            INT_BE.set(out, outOff + 16, e);
+            INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        final int s = this.layout;
+
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) INT_BE.get(in, inOff);
+            int b = (int) INT_BE.get(in, inOff + 4);
+            int c = (int) INT_BE.get(in, inOff + 8);
+            int d = (int) INT_BE.get(in, inOff + 12);
+            int e = (int) INT_BE.get(in, inOff + 16);
+            int f = (int) INT_BE.get(in, inOff + 20);
+
+            for (int k = 66; k >= 36; k -= 6) {     // Rounds 11 to 6: hexad
+                e ^= f1(s, f, km[k], kr[k]);
+                d ^= f2(s, e, km[k + 1], kr[k + 1]);
+                c ^= f3(s, d, km[k + 2], kr[k + 2]);
+                b ^= f4(s, c, km[k + 3], kr[k + 3]);
+                a ^= f5(s, b, km[k + 4], kr[k + 4]);
+                f ^= f6(s, a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 30; k >= 0; k -= 6) {      // Rounds 5 to 0: hexadInv
+                f ^= f6(s, a, km[k + 5], kr[k + 5]);
+                a ^= f5(s, b, km[k + 4], kr[k + 4]);
+                b ^= f4(s, c, km[k + 3], kr[k + 3]);
+                c ^= f3(s, d, km[k + 2], kr[k + 2]);
+                d ^= f2(s, e, km[k + 1], kr[k + 1]);
+                e ^= f1(s, f, km[k], kr[k]);
+            }
+
+            INT_BE.set(out, outOff, a);
+            INT_BE.set(out, outOff + 4, b);
+            INT_BE.set(out, outOff + 8, c);
+            INT_BE.set(out, outOff + 12, d);
+            INT_BE.set(out, outOff + 16, e);
+            INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    static int[] pack() {
+        int[] table = new int[1024];
+        System.arraycopy(CASTCipher.S1, 0, table, 0x000, 256);
+        System.arraycopy(CASTCipher.S2, 0, table, 0x100, 256);
+        System.arraycopy(CASTCipher.S3, 0, table, 0x200, 256);
+        System.arraycopy(CASTCipher.S4, 0, table, 0x300, 256);
+        return table;
+    }
+
+    // ---------------------------------------- F Functions ----------------------------------------------------
+    // CAST384.f1 .. f6 over the packed layout. The layout argument is PACKED or DIRECT and
+    // only sbox() looks at it.
+
+    static int f1(int s, int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d + Km, Kr);
+        return ((sbox(s, 0, tmp >>> 24) ^ sbox(s, 1, (tmp >>> 16) & 0xFF)) - sbox(s, 2, (tmp >>> 8) & 0xFF)) + sbox(s, 3, tmp & 0xFF);
+    }
+
+    static int f2(int s, int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d ^ Km, Kr);
+        return ((sbox(s, 0, tmp >>> 24) - sbox(s, 1, (tmp >>> 16) & 0xFF)) + sbox(s, 2, (tmp >>> 8) & 0xFF)) ^ sbox(s, 3, tmp & 0xFF);
+    }
+
+    static int f3(int s, int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(Km - d, Kr);
+        return ((sbox(s, 0, tmp >>> 24) + sbox(s, 1, (tmp >>> 16) & 0xFF)) ^ sbox(s, 2, (tmp >>> 8) & 0xFF)) - sbox(s, 3, tmp & 0xFF);
+    }
+
+    static int f4(int s, int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(Km - d, Kr);
+        return ((sbox(s, 0, tmp >>> 24) ^ sbox(s, 1, (tmp >>> 16) & 0xFF)) + sbox(s, 2, (tmp >>> 8) & 0xFF)) - sbox(s, 3, tmp & 0xFF);
+    }
+
+    static int f5(int s, int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d + Km, Kr);
+        return ((sbox(s, 0, tmp >>> 24) - sbox(s, 1, (tmp >>> 16) & 0xFF)) ^ sbox(s, 2, (tmp >>> 8) & 0xFF)) + sbox(s, 3, tmp & 0xFF);
+    }
+
+    static int f6(int s, int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d ^ Km, Kr);
+        return ((sbox(s, 0, tmp >>> 24) + sbox(s, 1, (tmp >>> 16) & 0xFF)) - sbox(s, 2, (tmp >>> 8) & 0xFF)) ^ sbox(s, 3, tmp & 0xFF);
+    }
+
+    /**
+     * Entry b (0..255) of S-box box + 1 under the given layout.
+     */
+    private static int sbox(int layout, int box, int b) {
+        if (layout == DIRECT) {
+            return DirectSboxEngine.sbox((box << 8) | b);
+        }
+        return T[(box << 8) | b];
+    }
+}
@@ -0,0 +1,164 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+
+/**
+ * CAST-384 CTR mode that spreads large buffers over several threads.
+ * <p>
+ * How it works:
+ * Keystream block n is the encryption of nonce || n alone, so any run of blocks can
+ * be produced without the ones before it. A buffer of at least threshold bytes is
+ * cut at block boundaries into parts (a few per thread, none smaller than
+ * MIN_PART_BYTES), and each part runs as one task on the executor with the shared,
+ * immutable CAST384Key, its own first counter and its own counter and keystream
+ * buffers, generating and XORing keystream exactly as CTRMode does. The caller waits
+ * for every part. Smaller buffers run the same code on the calling thread. The
+ * output is byte for byte what a CTRMode initialised with the same key and nonce
+ * produces for the same data.
+ * <p>
+ * Unlike CTRMode there is no stream position: each call starts at the counter it
+ * is given (0 by default), so one instance can serve any number of threads.
+ */
+public final class ParallelCTR {
+
+    /** Buffers below this many bytes are processed on the calling thread. */
+    public static final int DEFAULT_THRESHOLD = 1 << 20;
+
+    static final int MIN_PART_BYTES = 4096 * BLOCK_BYTES;        // 96 KiB
+    private static final int PARTS_PER_THREAD = 4;               // Balances uneven thread speeds
+
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final CAST384Key key;
+    private final byte[] nonce;
+    private final Executor executor;
+    private final int parallelism;
+    private final int threshold;
+
+    /**
+     * Runs on the common fork-join pool with DEFAULT_THRESHOLD.
+     *
+     * @param key   the expanded key
+     * @param nonce a 16-byte (128-bit) nonce
+     */
+    public ParallelCTR(CAST384Key key, byte[] nonce) {
+        this(key, nonce, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param key         the expanded key
+     * @param nonce       a 16-byte (128-bit) nonce
+     * @param executor    runs the parts of large buffers
+     * @param parallelism number of threads the executor can run at once
+     * @param threshold   buffers of fewer bytes stay on the calling thread
+     */
+    public ParallelCTR(CAST384Key key, byte[] nonce, Executor executor, int parallelism, int threshold) {
+        if (nonce.length != 16) {
+            throw new IllegalArgumentException("Nonce must be 16 bytes");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        this.key = Objects.requireNonNull(key, "key");
+        this.nonce = nonce.clone();
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.parallelism = parallelism;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Encrypts data in place from counter 0. Decryption is the same operation.
+     *
+     * @param data the bytes to process
+     */
+    public void encrypt(byte[] data) {
+        encrypt(0, data, 0, data, 0, data.length);
+    }
+
+    /**
+     * Decrypts data in place from counter 0.
+     *
+     * @param data the bytes to process
+     */
+    public void decrypt(byte[] data) {
+        encrypt(0, data, 0, data, 0, data.length);
+    }
+
+    /**
+     * XORs len bytes of in with the keystream starting at block firstCounter into out.
+     *
+     * @param firstCounter counter of the keystream block for in[inOff]
+     * @param in           source buffer
+     * @param inOff        offset of the first input byte
+     * @param out          destination buffer (may be in when inOff == outOff)
+     * @param outOff       offset of the first output byte
+     * @param len          number of bytes
+     */
+    public void encrypt(long firstCounter, byte[] in, int inOff, byte[] out, int outOff, int len) {
+        Objects.checkFromIndexSize(inOff, len, in.length);
+        Objects.checkFromIndexSize(outOff, len, out.length);
+
+        int parts = len < threshold ? 1 : Math.min(parallelism * PARTS_PER_THREAD, len / MIN_PART_BYTES);
+        if (parts <= 1) {
+            process(firstCounter, in, inOff, out, outOff, len);
+            return;
+        }
+
+        // Block-aligned part size; the last part takes the remainder
+        int blocks = (len + BLOCK_BYTES - 1) / BLOCK_BYTES;
+        int partBytes = (blocks + parts - 1) / parts * BLOCK_BYTES;
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[(len + partBytes - 1) / partBytes];
+        for (int p = 0; p < tasks.length; p++) {
+            int start = p * partBytes;
+            int n = Math.min(partBytes, len - start);
+            long counter = firstCounter + start / BLOCK_BYTES;
+            tasks[p] = CompletableFuture.runAsync(
+                    () -> process(counter, in, inOff + start, out, outOff + start, n), executor);
+        }
+
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * One part: the CTRMode refill and XOR loop over a private pair of buffers.
+     */
+    private void process(long counter, byte[] in, int inOff, byte[] out, int outOff, int len) {
+        int capacity = Math.min(CTRMode.BULK_BLOCKS, (len + BLOCK_BYTES - 1) / BLOCK_BYTES);
+        byte[] counters = new byte[capacity * BLOCK_BYTES];
+        byte[] keystream = new byte[counters.length];
+        for (int base = 0; base < counters.length; base += BLOCK_BYTES) {
+            System.arraycopy(nonce, 0, counters, base, 16);
+        }
+
+        for (int done = 0; done < len; ) {
+            int blocks = Math.min(capacity, (len - done + BLOCK_BYTES - 1) / BLOCK_BYTES);
+            for (int base = 16, end = blocks * BLOCK_BYTES; base < end; base += BLOCK_BYTES) {
+                LONG_BE.set(counters, base, counter++);
+            }
+            key.encryptBlocks(counters, 0, keystream, 0, blocks);
+
+            int n = Math.min(len - done, blocks * BLOCK_BYTES);
+            CTRMode.xor(in, inOff + done, keystream, 0, out, outOff + done, n);
+            done += n;
+        }
+    }
+}
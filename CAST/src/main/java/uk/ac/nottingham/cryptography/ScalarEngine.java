@@ -0,0 +1,608 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static uk.ac.nottingham.cryptography.CASTCipher.S1;
+import static uk.ac.nottingham.cryptography.CASTCipher.S2;
+import static uk.ac.nottingham.cryptography.CASTCipher.S3;
+import static uk.ac.nottingham.cryptography.CASTCipher.S4;
+
+/**
+ * Allocation-free scalar implementation of the CAST-384 block transform.
+ * <p>
+ * How it works:
+ * The six block words A..F are held in locals for the whole block. On the byte[]
+ * path, which every CAST384.encrypt call takes, they are read and written as
+ * big-endian ints straight from the byte buffers and the 12 rounds are fully
+ * unrolled so every key index is a constant. The ByteBuffer, int[], long[] and column
+ * entry points load their own block into locals the same way and run the rounds as
+ * two loops of hexads, like PackedSboxEngine. The F-functions are static, so there is
+ * no virtual dispatch on the hot path and nothing is allocated per block.
+ * <p>
+ * The round order matches CAST384.encrypt / decrypt:
+ *   - encryption runs hexad for rounds 0 to 5, then hexadInv for rounds 6 to 11
+ *   - decryption runs hexad for rounds 11 to 6, then hexadInv for rounds 5 to 0
+ */
+final class ScalarEngine implements BlockEngine {
+
+    static final int BLOCK_BYTES = 24;         // 192-bit block
+    static final int ROUND_KEYS = 72;          // 12 rounds x 6 keys
+
+    // Big-endian int view over byte[] (a single load/store instead of four byte accesses)
+    static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    // Same view over heap or direct ByteBuffers, independent of the buffer's own byte order
+    static final VarHandle BUFFER_INT_BE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final int[] km;
+    private final int[] kr;
+
+    /**
+     * Binds the engine to a set of round keys. The arrays are not copied, so the
+     * engine follows any in-place change to them.
+     *
+     * @param Km 72 round masking keys
+     * @param Kr 72 round rotation keys
+     */
+    ScalarEngine(int[] Km, int[] Kr) {
+        if (Km.length != ROUND_KEYS || Kr.length != ROUND_KEYS) {
+            throw new IllegalArgumentException("CAST-384 requires 72 masking and 72 rotation keys");
+        }
+        this.km = Km;
+        this.kr = Kr;
+    }
+
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) INT_BE.get(in, inOff);
+            int b = (int) INT_BE.get(in, inOff + 4);
+            int c = (int) INT_BE.get(in, inOff + 8);
+            int d = (int) INT_BE.get(in, inOff + 12);
+            int e = (int) INT_BE.get(in, inOff + 16);
+            int f = (int) INT_BE.get(in, inOff + 20);
+
+            // Round 0: hexad
+            e ^= f1(f, km[0], kr[0]);
+            d ^= f2(e, km[1], kr[1]);
+            c ^= f3(d, km[2], kr[2]);
+            b ^= f4(c, km[3], kr[3]);
+            a ^= f5(b, km[4], kr[4]);
+            f ^= f6(a, km[5], kr[5]);
+            // Round 1: hexad
+            e ^= f1(f, km[6], kr[6]);
+            d ^= f2(e, km[7], kr[7]);
+            c ^= f3(d, km[8], kr[8]);
+            b ^= f4(c, km[9], kr[9]);
+            a ^= f5(b, km[10], kr[10]);
+            f ^= f6(a, km[11], kr[11]);
+            // Round 2: hexad
+            e ^= f1(f, km[12], kr[12]);
+            d ^= f2(e, km[13], kr[13]);
+            c ^= f3(d, km[14], kr[14]);
+            b ^= f4(c, km[15], kr[15]);
+            a ^= f5(b, km[16], kr[16]);
+            f ^= f6(a, km[17], kr[17]);
+            // Round 3: hexad
+            e ^= f1(f, km[18], kr[18]);
+            d ^= f2(e, km[19], kr[19]);
+            c ^= f3(d, km[20], kr[20]);
+            b ^= f4(c, km[21], kr[21]);
+            a ^= f5(b, km[22], kr[22]);
+            f ^= f6(a, km[23], kr[23]);
+            // Round 4: hexad
+            e ^= f1(f, km[24], kr[24]);
+            d ^= f2(e, km[25], kr[25]);
+            c ^= f3(d, km[26], kr[26]);
+            b ^= f4(c, km[27], kr[27]);
+            a ^= f5(b, km[28], kr[28]);
+            f ^= f6(a, km[29], kr[29]);
+            // Round 5: hexad
+            e ^= f1(f, km[30], kr[30]);
+            d ^= f2(e, km[31], kr[31]);
+            c ^= f3(d, km[32], kr[32]);
+            b ^= f4(c, km[33], kr[33]);
+            a ^= f5(b, km[34], kr[34]);
+            f ^= f6(a, km[35], kr[35]);
+            // Round 6: hexadInv
+            f ^= f6(a, km[41], kr[41]);
+            a ^= f5(b, km[40], kr[40]);
+            b ^= f4(c, km[39], kr[39]);
+            c ^= f3(d, km[38], kr[38]);
+            d ^= f2(e, km[37], kr[37]);
+            e ^= f1(f, km[36], kr[36]);
+            // Round 7: hexadInv
+            f ^= f6(a, km[47], kr[47]);
+            a ^= f5(b, km[46], kr[46]);
+            b ^= f4(c, km[45], kr[45]);
+            c ^= f3(d, km[44], kr[44]);
+            d ^= f2(e, km[43], kr[43]);
+            e ^= f1(f, km[42], kr[42]);
+            // Round 8: hexadInv
+            f ^= f6(a, km[53], kr[53]);
+            a ^= f5(b, km[52], kr[52]);
+            b ^= f4(c, km[51], kr[51]);
+            c ^= f3(d, km[50], kr[50]);
+            d ^= f2(e, km[49], kr[49]);
+            e ^= f1(f, km[48], kr[48]);
+            // Round 9: hexadInv
+            f ^= f6(a, km[59], kr[59]);
+            a ^= f5(b, km[58], kr[58]);
+            b ^= f4(c, km[57], kr[57]);
+            c ^= f3(d, km[56], kr[56]);
+            d ^= f2(e, km[55], kr[55]);
+            e ^= f1(f, km[54], kr[54]);
+            // Round 10: hexadInv
+            f ^= f6(a, km[65], kr[65]);
+            a ^= f5(b, km[64], kr[64]);
+            b ^= f4(c, km[63], kr[63]);
+            c ^= f3(d, km[62], kr[62]);
+            d ^= f2(e, km[61], kr[61]);
+            e ^= f1(f, km[60], kr[60]);
+            // Round 11: hexadInv
+            f ^= f6(a, km[71], kr[71]);
+            a ^= f5(b, km[70], kr[70]);
+            b ^= f4(c, km[69], kr[69]);
+            c ^= f3(d, km[68], kr[68]);
+            d ^= f2(e, km[67], kr[67]);
+            e ^= f1(f, km[66], kr[66]);
+
+            INT_BE.set(out, outOff, a);
+            INT_BE.set(out, outOff + 4, b);
+            INT_BE.set(out, outOff + 8, c);
+            INT_BE.set(out, outOff + 12, d);
+            INT_BE.set(out, outOff + 16, e);
+            INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) INT_BE.get(in, inOff);
+            int b = (int) INT_BE.get(in, inOff + 4);
+            int c = (int) INT_BE.get(in, inOff + 8);
+            int d = (int) INT_BE.get(in, inOff + 12);
+            int e = (int) INT_BE.get(in, inOff + 16);
+            int f = (int) INT_BE.get(in, inOff + 20);
+
+            // Round 11: hexad
+            e ^= f1(f, km[66], kr[66]);
+            d ^= f2(e, km[67], kr[67]);
+            c ^= f3(d, km[68], kr[68]);
+            b ^= f4(c, km[69], kr[69]);
+            a ^= f5(b, km[70], kr[70]);
+            f ^= f6(a, km[71], kr[71]);
+            // Round 10: hexad
+            e ^= f1(f, km[60], kr[60]);
+            d ^= f2(e, km[61], kr[61]);
+            c ^= f3(d, km[62], kr[62]);
+            b ^= f4(c, km[63], kr[63]);
+            a ^= f5(b, km[64], kr[64]);
+            f ^= f6(a, km[65], kr[65]);
+            // Round 9: hexad
+            e ^= f1(f, km[54], kr[54]);
+            d ^= f2(e, km[55], kr[55]);
+            c ^= f3(d, km[56], kr[56]);
+            b ^= f4(c, km[57], kr[57]);
+            a ^= f5(b, km[58], kr[58]);
+            f ^= f6(a, km[59], kr[59]);
+            // Round 8: hexad
+            e ^= f1(f, km[48], kr[48]);
+            d ^= f2(e, km[49], kr[49]);
+            c ^= f3(d, km[50], kr[50]);
+            b ^= f4(c, km[51], kr[51]);
+            a ^= f5(b, km[52], kr[52]);
+            f ^= f6(a, km[53], kr[53]);
+            // Round 7: hexad
+            e ^= f1(f, km[42], kr[42]);
+            d ^= f2(e, km[43], kr[43]);
+            c ^= f3(d, km[44], kr[44]);
+            b ^= f4(c, km[45], kr[45]);
+            a ^= f5(b, km[46], kr[46]);
+            f ^= f6(a, km[47], kr[47]);
+            // Round 6: hexad
+            e ^= f1(f, km[36], kr[36]);
+            d ^= f2(e, km[37], kr[37]);
+            c ^= f3(d, km[38], kr[38]);
+            b ^= f4(c, km[39], kr[39]);
+            a ^= f5(b, km[40], kr[40]);
+            f ^= f6(a, km[41], kr[41]);
+            // Round 5: hexadInv
+            f ^= f6(a, km[35], kr[35]);
+            a ^= f5(b, km[34], kr[34]);
+            b ^= f4(c, km[33], kr[33]);
+            c ^= f3(d, km[32], kr[32]);
+            d ^= f2(e, km[31], kr[31]);
+            e ^= f1(f, km[30], kr[30]);
+            // Round 4: hexadInv
+            f ^= f6(a, km[29], kr[29]);
+            a ^= f5(b, km[28], kr[28]);
+            b ^= f4(c, km[27], kr[27]);
+            c ^= f3(d, km[26], kr[26]);
+            d ^= f2(e, km[25], kr[25]);
+            e ^= f1(f, km[24], kr[24]);
+            // Round 3: hexadInv
+            f ^= f6(a, km[23], kr[23]);
+            a ^= f5(b, km[22], kr[22]);
+            b ^= f4(c, km[21], kr[21]);
+            c ^= f3(d, km[20], kr[20]);
+            d ^= f2(e, km[19], kr[19]);
+            e ^= f1(f, km[18], kr[18]);
+            // Round 2: hexadInv
+            f ^= f6(a, km[17], kr[17]);
+            a ^= f5(b, km[16], kr[16]);
+            b ^= f4(c, km[15], kr[15]);
+            c ^= f3(d, km[14], kr[14]);
+            d ^= f2(e, km[13], kr[13]);
+            e ^= f1(f, km[12], kr[12]);
+            // Round 1: hexadInv
+            f ^= f6(a, km[11], kr[11]);
+            a ^= f5(b, km[10], kr[10]);
+            b ^= f4(c, km[9], kr[9]);
+            c ^= f3(d, km[8], kr[8]);
+            d ^= f2(e, km[7], kr[7]);
+            e ^= f1(f, km[6], kr[6]);
+            // Round 0: hexadInv
+            f ^= f6(a, km[5], kr[5]);
+            a ^= f5(b, km[4], kr[4]);
+            b ^= f4(c, km[3], kr[3]);
+            c ^= f3(d, km[2], kr[2]);
+            d ^= f2(e, km[1], kr[1]);
+            e ^= f1(f, km[0], kr[0]);
+
+            INT_BE.set(out, outOff, a);
+            INT_BE.set(out, outOff + 4, b);
+            INT_BE.set(out, outOff + 8, c);
+            INT_BE.set(out, outOff + 12, d);
+            INT_BE.set(out, outOff + 16, e);
+            INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    /**
+     * Encrypts blocks held in ByteBuffers (heap or direct), addressed by absolute
+     * index. Positions and limits are left for the caller to update.
+     */
+    void encryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) BUFFER_INT_BE.get(in, inOff);
+            int b = (int) BUFFER_INT_BE.get(in, inOff + 4);
+            int c = (int) BUFFER_INT_BE.get(in, inOff + 8);
+            int d = (int) BUFFER_INT_BE.get(in, inOff + 12);
+            int e = (int) BUFFER_INT_BE.get(in, inOff + 16);
+            int f = (int) BUFFER_INT_BE.get(in, inOff + 20);
+
+            for (int k = 0; k < 36; k += 6) {       // Rounds 0 to 5: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 36; k < 72; k += 6) {      // Rounds 6 to 11: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            BUFFER_INT_BE.set(out, outOff, a);
+            BUFFER_INT_BE.set(out, outOff + 4, b);
+            BUFFER_INT_BE.set(out, outOff + 8, c);
+            BUFFER_INT_BE.set(out, outOff + 12, d);
+            BUFFER_INT_BE.set(out, outOff + 16, e);
+            BUFFER_INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    /**
+     * Decrypts blocks held in ByteBuffers (heap or direct), addressed by absolute
+     * index. Positions and limits are left for the caller to update.
+     */
+    void decryptBlocks(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, inOff += BLOCK_BYTES, outOff += BLOCK_BYTES) {
+            int a = (int) BUFFER_INT_BE.get(in, inOff);
+            int b = (int) BUFFER_INT_BE.get(in, inOff + 4);
+            int c = (int) BUFFER_INT_BE.get(in, inOff + 8);
+            int d = (int) BUFFER_INT_BE.get(in, inOff + 12);
+            int e = (int) BUFFER_INT_BE.get(in, inOff + 16);
+            int f = (int) BUFFER_INT_BE.get(in, inOff + 20);
+
+            for (int k = 66; k >= 36; k -= 6) {     // Rounds 11 to 6: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 30; k >= 0; k -= 6) {      // Rounds 5 to 0: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            BUFFER_INT_BE.set(out, outOff, a);
+            BUFFER_INT_BE.set(out, outOff + 4, b);
+            BUFFER_INT_BE.set(out, outOff + 8, c);
+            BUFFER_INT_BE.set(out, outOff + 12, d);
+            BUFFER_INT_BE.set(out, outOff + 16, e);
+            BUFFER_INT_BE.set(out, outOff + 20, f);
+        }
+    }
+
+    /**
+     * Encrypts blockCount blocks of six consecutive words A..F starting at w[off], in place.
+     */
+    void encryptWords(int[] w, int off, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, off += 6) {
+            int a = w[off];
+            int b = w[off + 1];
+            int c = w[off + 2];
+            int d = w[off + 3];
+            int e = w[off + 4];
+            int f = w[off + 5];
+
+            for (int k = 0; k < 36; k += 6) {       // Rounds 0 to 5: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 36; k < 72; k += 6) {      // Rounds 6 to 11: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            w[off] = a;
+            w[off + 1] = b;
+            w[off + 2] = c;
+            w[off + 3] = d;
+            w[off + 4] = e;
+            w[off + 5] = f;
+        }
+    }
+
+    /**
+     * Decrypts blockCount blocks of six consecutive words starting at w[off], in place.
+     */
+    void decryptWords(int[] w, int off, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, off += 6) {
+            int a = w[off];
+            int b = w[off + 1];
+            int c = w[off + 2];
+            int d = w[off + 3];
+            int e = w[off + 4];
+            int f = w[off + 5];
+
+            for (int k = 66; k >= 36; k -= 6) {     // Rounds 11 to 6: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 30; k >= 0; k -= 6) {      // Rounds 5 to 0: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            w[off] = a;
+            w[off + 1] = b;
+            w[off + 2] = c;
+            w[off + 3] = d;
+            w[off + 4] = e;
+            w[off + 5] = f;
+        }
+    }
+
+    /**
+     * Encrypts blockCount blocks of three longs starting at w[off], in place. Each long
+     * holds two block words, the earlier one in its high half.
+     */
+    void encryptWords(long[] w, int off, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, off += 3) {
+            long ab = w[off], cd = w[off + 1], ef = w[off + 2];
+            int a = (int) (ab >>> 32), b = (int) ab;
+            int c = (int) (cd >>> 32), d = (int) cd;
+            int e = (int) (ef >>> 32), f = (int) ef;
+
+            for (int k = 0; k < 36; k += 6) {       // Rounds 0 to 5: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 36; k < 72; k += 6) {      // Rounds 6 to 11: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            w[off] = ((long) a << 32) | (b & 0xFFFFFFFFL);
+            w[off + 1] = ((long) c << 32) | (d & 0xFFFFFFFFL);
+            w[off + 2] = ((long) e << 32) | (f & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Decrypts blockCount blocks of three longs starting at w[off], in place.
+     */
+    void decryptWords(long[] w, int off, int blockCount) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int n = 0; n < blockCount; n++, off += 3) {
+            long ab = w[off], cd = w[off + 1], ef = w[off + 2];
+            int a = (int) (ab >>> 32), b = (int) ab;
+            int c = (int) (cd >>> 32), d = (int) cd;
+            int e = (int) (ef >>> 32), f = (int) ef;
+
+            for (int k = 66; k >= 36; k -= 6) {     // Rounds 11 to 6: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 30; k >= 0; k -= 6) {      // Rounds 5 to 0: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            w[off] = ((long) a << 32) | (b & 0xFFFFFFFFL);
+            w[off + 1] = ((long) c << 32) | (d & 0xFFFFFFFFL);
+            w[off + 2] = ((long) e << 32) | (f & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Encrypts count blocks held as six parallel word columns, from row off, in place.
+     */
+    void encryptColumns(int[] A, int[] B, int[] C, int[] D, int[] E, int[] F, int off, int count) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int row = off, end = off + count; row < end; row++) {
+            int a = A[row], b = B[row], c = C[row];
+            int d = D[row], e = E[row], f = F[row];
+
+            for (int k = 0; k < 36; k += 6) {       // Rounds 0 to 5: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 36; k < 72; k += 6) {      // Rounds 6 to 11: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            A[row] = a; B[row] = b; C[row] = c;
+            D[row] = d; E[row] = e; F[row] = f;
+        }
+    }
+
+    /**
+     * Decrypts count blocks held as six parallel word columns, from row off, in place.
+     */
+    void decryptColumns(int[] A, int[] B, int[] C, int[] D, int[] E, int[] F, int off, int count) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+
+        for (int row = off, end = off + count; row < end; row++) {
+            int a = A[row], b = B[row], c = C[row];
+            int d = D[row], e = E[row], f = F[row];
+
+            for (int k = 66; k >= 36; k -= 6) {     // Rounds 11 to 6: hexad
+                e ^= f1(f, km[k], kr[k]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+            }
+            for (int k = 30; k >= 0; k -= 6) {      // Rounds 5 to 0: hexadInv
+                f ^= f6(a, km[k + 5], kr[k + 5]);
+                a ^= f5(b, km[k + 4], kr[k + 4]);
+                b ^= f4(c, km[k + 3], kr[k + 3]);
+                c ^= f3(d, km[k + 2], kr[k + 2]);
+                d ^= f2(e, km[k + 1], kr[k + 1]);
+                e ^= f1(f, km[k], kr[k]);
+            }
+
+            A[row] = a; B[row] = b; C[row] = c;
+            D[row] = d; E[row] = e; F[row] = f;
+        }
+    }
+
+    // ---------------------------------------- F Functions ----------------------------------------------------
+    // Static forms of CAST384.f1 .. f6; see there for the operation table of each function.
+
+    static int f1(int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d + Km, Kr);
+        return ((S1[tmp >>> 24] ^ S2[(tmp >>> 16) & 0xFF]) - S3[(tmp >>> 8) & 0xFF]) + S4[tmp & 0xFF];
+    }
+
+    static int f2(int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d ^ Km, Kr);
+        return ((S1[tmp >>> 24] - S2[(tmp >>> 16) & 0xFF]) + S3[(tmp >>> 8) & 0xFF]) ^ S4[tmp & 0xFF];
+    }
+
+    static int f3(int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(Km - d, Kr);
+        return ((S1[tmp >>> 24] + S2[(tmp >>> 16) & 0xFF]) ^ S3[(tmp >>> 8) & 0xFF]) - S4[tmp & 0xFF];
+    }
+
+    static int f4(int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(Km - d, Kr);
+        return ((S1[tmp >>> 24] ^ S2[(tmp >>> 16) & 0xFF]) + S3[(tmp >>> 8) & 0xFF]) - S4[tmp & 0xFF];
+    }
+
+    static int f5(int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d + Km, Kr);
+        return ((S1[tmp >>> 24] - S2[(tmp >>> 16) & 0xFF]) ^ S3[(tmp >>> 8) & 0xFF]) + S4[tmp & 0xFF];
+    }
+
+    static int f6(int d, int Km, int Kr) {
+        int tmp = Integer.rotateLeft(d ^ Km, Kr);
+        return ((S1[tmp >>> 24] + S2[(tmp >>> 16) & 0xFF]) - S3[(tmp >>> 8) & 0xFF]) ^ S4[tmp & 0xFF];
+    }
+}
@@ -0,0 +1,132 @@
+package uk.ac.nottingham.cryptography;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A cipher handle that many threads can use at once while its key is rotated.
+ * <p>
+ * How it works:
+ * The current key is an immutable CAST384Key held in an AtomicReference. Every
+ * operation reads the reference once and runs entirely on that key, so it never
+ * sees a half-written schedule and needs no lock. rotate() runs the new key schedule
+ * on the calling thread, off to the side, and then publishes the result with a
+ * single reference swap: operations that started before the swap finish on the old
+ * key, later ones use the new key, and no thread waits for another. The old key is
+ * left to the garbage collector once the last operation on it has returned.
+ * <p>
+ * Work that must use one key throughout (several calls for one message) should take
+ * current() once and use that key directly.
+ */
+public final class SharedCipher {
+
+    private final AtomicReference<CAST384Key> key;
+
+    /**
+     * @param key the initial key
+     */
+    public SharedCipher(CAST384Key key) {
+        this.key = new AtomicReference<>(Objects.requireNonNull(key, "key"));
+    }
+
+    /**
+     * Runs the key schedule on key and wraps the result.
+     *
+     * @param key the user key, as passed to initialise
+     * @return the shared cipher
+     */
+    public static SharedCipher of(byte[] key) {
+        return new SharedCipher(CAST384Key.of(key));
+    }
+
+    /**
+     * @return the key operations are currently using
+     */
+    public CAST384Key current() {
+        return key.get();
+    }
+
+    /**
+     * Expands key and makes it the current key.
+     *
+     * @param key the new user key
+     * @return the key that was replaced
+     */
+    public CAST384Key rotate(byte[] key) {
+        return rotate(CAST384Key.of(key));
+    }
+
+    /**
+     * Makes next the current key.
+     *
+     * @param next the new key
+     * @return the key that was replaced
+     */
+    public CAST384Key rotate(CAST384Key next) {
+        return key.getAndSet(Objects.requireNonNull(next, "next"));
+    }
+
+    /**
+     * Makes next the current key only if expected is still the current key, so that
+     * two rotating threads cannot overwrite each other's choice unnoticed.
+     *
+     * @param expected the key the caller last saw
+     * @param next     the new key
+     * @return true if the key was replaced
+     */
+    public boolean rotate(CAST384Key expected, CAST384Key next) {
+        return key.compareAndSet(expected, Objects.requireNonNull(next, "next"));
+    }
+
+    /**
+     * Encrypts the 24-byte block at in[inOff] into out[outOff] under the current key.
+     *
+     * @param in     source buffer
+     * @param inOff  offset of the plaintext block
+     * @param out    destination buffer (may be in)
+     * @param outOff offset of the ciphertext block
+     */
+    public void encrypt(byte[] in, int inOff, byte[] out, int outOff) {
+        key.get().encrypt(in, inOff, out, outOff);
+    }
+
+    /**
+     * Decrypts the 24-byte block at in[inOff] into out[outOff] under the current key.
+     *
+     * @param in     source buffer
+     * @param inOff  offset of the ciphertext block
+     * @param out    destination buffer (may be in)
+     * @param outOff offset of the plaintext block
+     */
+    public void decrypt(byte[] in, int inOff, byte[] out, int outOff) {
+        key.get().decrypt(in, inOff, out, outOff);
+    }
+
+    /**
+     * Encrypts blockCount consecutive blocks, all under the key that is current when
+     * the call starts.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first plaintext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first ciphertext block
+     * @param blockCount number of 24-byte blocks to encrypt
+     */
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        key.get().encryptBlocks(in, inOff, out, outOff, blockCount);
+    }
+
+    /**
+     * Decrypts blockCount consecutive blocks, all under the key that is current when
+     * the call starts.
+     *
+     * @param in         source buffer
+     * @param inOff      offset of the first ciphertext block
+     * @param out        destination buffer (may be in when inOff == outOff)
+     * @param outOff     offset of the first plaintext block
+     * @param blockCount number of 24-byte blocks to decrypt
+     */
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        key.get().decryptBlocks(in, inOff, out, outOff, blockCount);
+    }
+}
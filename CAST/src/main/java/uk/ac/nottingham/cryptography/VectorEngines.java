@@ -0,0 +1,61 @@
+package uk.ac.nottingham.cryptography;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Optional access to the SIMD VectorEngine.
+ * <p>
+ * How it works:
+ * VectorEngine is compiled against the incubating jdk.incubator.vector module and
+ * ships in the versioned part of the multi-release jar. It is only usable when the
+ * JVM was started with --add-modules jdk.incubator.vector, so it is looked up
+ * reflectively once; when the module or the class is missing, isAvailable() returns
+ * false and callers keep using the scalar engines.
+ */
+final class VectorEngines {
+
+    private static final String MODULE = "jdk.incubator.vector";
+    private static final String ENGINE = "uk.ac.nottingham.cryptography.VectorEngine";
+
+    private static final MethodHandle constructor = findConstructor();
+
+    private VectorEngines() {
+    }
+
+    static boolean isAvailable() {
+        return constructor != null;
+    }
+
+    /**
+     * Creates a SIMD engine for the given round keys.
+     *
+     * @throws IllegalStateException if the Vector API is not available
+     */
+    static BlockEngine create(int[] Km, int[] Kr) {
+        if (constructor == null) {
+            throw new IllegalStateException("The " + MODULE + " module is not available");
+        }
+        try {
+            return (BlockEngine) constructor.invoke(Km, Kr);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to create the vector engine", e);
+        }
+    }
+
+    private static MethodHandle findConstructor() {
+        if (ModuleLayer.boot().findModule(MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> engine = Class.forName(ENGINE, true, VectorEngines.class.getClassLoader());
+            return MethodHandles.lookup().findConstructor(engine,
+                    MethodType.methodType(void.class, int[].class, int[].class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package uk.ac.nottingham.cryptography;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Drives the JIT to compile the CAST-384 hot paths before real work arrives.
+ * <p>
+ * How it works:
+ * A short-lived process spends most of its first megabytes in the interpreter, at a
+ * few MB/s, until the engines have been called often enough to be compiled. run()
+ * makes those calls up front with a throwaway key: the key schedule, single blocks,
+ * bulk calls on the default engine, direct buffers and CTR mode, each enough times
+ * for the optimising compiler to pick them up. Single-block calls are kept few, so
+ * the bulk path dominates the profile the compiler works from. It encrypts about
+ * 3.5 MB and takes a few hundred milliseconds.
+ * start() runs the same work once on a daemon thread and returns a future that
+ * completes when it is done, so a caller can overlap it with its own start-up and
+ * wait on ready() before timing-sensitive work.
+ * <p>
+ * main() runs the warm-up and exits. The cdsArchive Gradle task uses it as the
+ * training run for a class-data sharing archive, so later runs also skip loading and
+ * verifying these classes.
+ */
+public final class Warmup {
+
+    private static final int SINGLE_CALLS = 2_000;      // One-block encrypt / decrypt calls
+    private static final int BULK_CALLS = 1_000;        // Calls of BULK_BLOCKS blocks
+    private static final int BULK_BLOCKS = 64;
+    private static final int SIDE_CALLS = 300;          // Direct-buffer and CTR calls
+    private static final int KEY_CALLS = 2_000;         // Key schedules
+
+    private static final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private static Thread thread;                       // Set by the first start()
+
+    private Warmup() {
+    }
+
+    /**
+     * Warms up the hot paths on the calling thread and returns when done.
+     */
+    public static void run() {
+        byte[] key = new byte[48];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (i * 29 + 1);
+        }
+
+        CAST384 cipher = new CAST384();
+        for (int i = 0; i < KEY_CALLS; i++) {
+            key[0] = (byte) i;
+            cipher.rekey(key, 0, key.length);
+        }
+        cipher.initialise(key);
+
+        byte[] block = new byte[24];
+        for (int i = 0; i < SINGLE_CALLS; i++) {
+            cipher.encrypt(block);
+            cipher.decrypt(block);
+        }
+
+        byte[] data = new byte[BULK_BLOCKS * 24];
+        for (int i = 0; i < BULK_CALLS; i++) {
+            cipher.encryptBlocks(data, 0, data, 0, BULK_BLOCKS);
+            cipher.decryptBlocks(data, 0, data, 0, BULK_BLOCKS);
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        for (int i = 0; i < SIDE_CALLS; i++) {
+            direct.clear();
+            cipher.encrypt(direct, direct.duplicate());
+        }
+
+        CTRMode ctr = new CTRMode();
+        ctr.initialise(cipher, key, new byte[16]);
+        for (int i = 0; i < SIDE_CALLS; i++) {
+            ctr.encrypt(data);
+        }
+    }
+
+    /**
+     * Starts the warm-up on a background daemon thread, once per JVM; later calls
+     * return the same future.
+     *
+     * @return a future that completes when the warm-up has finished
+     */
+    public static synchronized CompletableFuture<Void> start() {
+        if (thread == null) {
+            thread = new Thread(() -> {
+                try {
+                    run();
+                    ready.complete(null);
+                } catch (Throwable e) {
+                    ready.completeExceptionally(e);
+                }
+            }, "cast384-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return ready;
+    }
+
+    /**
+     * @return a future that completes when a warm-up started by start() has finished
+     */
+    public static CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    /**
+     * @return true once a warm-up started by start() has finished
+     */
+    public static boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    /**
+     * Runs the warm-up and exits; the training run for the cdsArchive task.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        run();
+    }
+}
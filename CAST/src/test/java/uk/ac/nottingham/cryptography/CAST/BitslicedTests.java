@@ -0,0 +1,119 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CTRMode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BitslicedTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 3 + 19);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void bitslicedMatchesScalarTest() {
+        for (byte[] key : new byte[][] { keyA, keyB }) {
+            reference.initialise(key);
+            reference.setLanes(1);
+            cipher.initialise(key);
+            cipher.setBitsliced(true);
+
+            // Partial, exact and multi-group batches
+            for (int blocks : new int[] { 0, 1, 5, 63, 64, 65, 130 }) {
+                byte[] expected = source(blocks * 24);
+                byte[] actual = expected.clone();
+                reference.encryptBlocks(expected, 0, expected, 0, blocks);
+                cipher.encryptBlocks(actual, 0, actual, 0, blocks);
+                assertArrayEquals(expected, actual);
+
+                cipher.decryptBlocks(actual, 0, actual, 0, blocks);
+                assertArrayEquals(source(blocks * 24), actual);
+            }
+        }
+    }
+
+    @Test
+    @Order(1)
+    void singleBlockTest() {
+        byte[] expected = source(24);
+        byte[] actual = expected.clone();
+
+        reference.initialise(keyA);
+        reference.encrypt(expected);
+        cipher.initialise(keyA);
+        cipher.setBitsliced(true);
+        cipher.encrypt(actual);
+
+        assertArrayEquals(expected, actual);
+        assertEquals(64, cipher.getParallelBlocks());
+    }
+
+    @Test
+    @Order(2)
+    void directBufferTest() {
+        byte[] plaintext = source(24 * 70);
+        byte[] expected = plaintext.clone();
+        reference.initialise(keyB);
+        reference.encryptBlocks(expected, 0, expected, 0, 70);
+
+        cipher.initialise(keyB);
+        cipher.setBitsliced(true);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(plaintext.length);
+        buffer.put(plaintext).flip();
+        cipher.encrypt(buffer, buffer);
+
+        byte[] actual = new byte[plaintext.length];
+        buffer.flip().get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(3)
+    void ctrKeystreamTest() {
+        CAST384 bitsliced = new CAST384();
+        bitsliced.setBitsliced(true);
+        CTRMode expected = new CTRMode();
+        CTRMode actual = new CTRMode();
+        expected.initialise(new CAST384(), keyA, nonceA);
+        actual.initialise(bitsliced, keyA, nonceA);
+
+        // Spans several 64-block refills, with a split in the middle of a block
+        byte[] a = source(24 * 150 + 7);
+        byte[] head = Arrays.copyOfRange(a, 0, 1000);
+        byte[] tail = Arrays.copyOfRange(a, 1000, a.length);
+        expected.encrypt(a);
+        actual.encrypt(head);
+        actual.encrypt(tail);
+
+        byte[] joined = Arrays.copyOf(head, a.length);
+        System.arraycopy(tail, 0, joined, head.length, tail.length);
+        assertArrayEquals(a, joined);
+    }
+}
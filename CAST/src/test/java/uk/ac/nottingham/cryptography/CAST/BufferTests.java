@@ -0,0 +1,120 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CASTCipher;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BufferTests {
+    private final CASTCipher cipher = ServiceLoader.load(CASTCipher.class).findFirst().orElseThrow();
+
+    private static final byte[] keyA;
+
+    static {
+        keyA = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+    }
+
+    private byte[] expected(byte[] plaintext) {
+        byte[] out = plaintext.clone();
+        cipher.encryptBlocks(out, 0, out, 0, out.length / 24);
+        return out;
+    }
+
+    private static byte[] contents(ByteBuffer buffer, int offset, int length) {
+        byte[] data = new byte[length];
+        buffer.get(offset, data);
+        return data;
+    }
+
+    @Test
+    @Order(0)
+    void heapBufferTest() {
+        byte[] plaintext = source(24 * 5);
+        cipher.initialise(keyA);
+
+        ByteBuffer src = ByteBuffer.wrap(plaintext.clone());
+        ByteBuffer dst = ByteBuffer.allocate(plaintext.length);
+        cipher.encrypt(src, dst);
+
+        assertEquals(plaintext.length, src.position());
+        assertEquals(plaintext.length, dst.position());
+        assertArrayEquals(expected(plaintext), dst.array());
+    }
+
+    @Test
+    @Order(1)
+    void directBufferTest() {
+        byte[] plaintext = source(24 * 7);
+        cipher.initialise(keyA);
+
+        ByteBuffer src = ByteBuffer.allocateDirect(plaintext.length + 10);
+        ByteBuffer dst = ByteBuffer.allocateDirect(plaintext.length + 3);
+        src.position(10);
+        src.put(plaintext).position(10);
+        dst.position(3);
+        cipher.encrypt(src, dst);
+
+        assertEquals(plaintext.length + 10, src.position());
+        assertEquals(plaintext.length + 3, dst.position());
+        assertArrayEquals(expected(plaintext), contents(dst, 3, plaintext.length));
+
+        dst.position(3);
+        ByteBuffer back = ByteBuffer.allocate(plaintext.length);
+        cipher.decrypt(dst, back);
+        assertArrayEquals(plaintext, back.array());
+    }
+
+    @Test
+    @Order(2)
+    void inPlaceDirectBufferTest() {
+        byte[] plaintext = source(24 * 3);
+        cipher.initialise(keyA);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(plaintext.length);
+        buffer.put(plaintext).flip();
+        cipher.encrypt(buffer, buffer);
+
+        assertEquals(plaintext.length, buffer.position());
+        assertArrayEquals(expected(plaintext), contents(buffer, 0, plaintext.length));
+    }
+
+    @Test
+    @Order(3)
+    void mixedBufferTest() {
+        byte[] plaintext = source(24 * 4);
+        cipher.initialise(keyA);
+
+        ByteBuffer src = ByteBuffer.wrap(plaintext.clone()).asReadOnlyBuffer();
+        ByteBuffer dst = ByteBuffer.allocateDirect(plaintext.length);
+        cipher.encrypt(src, dst);
+
+        assertArrayEquals(expected(plaintext), contents(dst, 0, plaintext.length));
+    }
+
+    @Test
+    @Order(4)
+    void invalidBufferTest() {
+        cipher.initialise(keyA);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> cipher.encrypt(ByteBuffer.allocate(25), ByteBuffer.allocate(48)));
+        assertThrows(ReadOnlyBufferException.class,
+                () -> cipher.encrypt(ByteBuffer.allocate(24), ByteBuffer.allocate(24).asReadOnlyBuffer()));
+        assertThrows(BufferOverflowException.class,
+                () -> cipher.encrypt(ByteBuffer.allocate(48), ByteBuffer.allocate(24)));
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CASTCipher;
+
+import java.util.Arrays;
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BulkTests {
+    private final CASTCipher cipher = ServiceLoader.load(CASTCipher.class).findFirst().orElseThrow();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+        }
+    }
+
+    private byte[] encryptEachBlock(byte[] data, int off, int blockCount) {
+        byte[] expected = new byte[blockCount * 24];
+        byte[] block = new byte[24];
+        for (int b = 0; b < blockCount; b++) {
+            System.arraycopy(data, off + b * 24, block, 0, 24);
+            cipher.encrypt(block);
+            System.arraycopy(block, 0, expected, b * 24, 24);
+        }
+        return expected;
+    }
+
+    @Test
+    @Order(0)
+    void singleBlockMatchesEncryptTest() {
+        byte[] block = new byte[24];
+        for (int i = 0; i < 24; i++) {
+            block[i] = (byte)(0x1b & i);
+        }
+
+        cipher.initialise(keyA);
+        byte[] out = new byte[24];
+        cipher.encryptBlocks(block, 0, out, 0, 1);
+        cipher.encrypt(block);
+
+        assertArrayEquals(block, out);
+    }
+
+    @Test
+    @Order(1)
+    void inPlaceBulkEncryptTest() {
+        byte[] data = source(24 * 17);
+
+        cipher.initialise(keyA);
+        byte[] expected = encryptEachBlock(data, 0, 17);
+        cipher.encryptBlocks(data, 0, data, 0, 17);
+
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    @Order(2)
+    void outOfPlaceOffsetEncryptTest() {
+        byte[] data = source(24 * 9 + 5);
+        byte[] out = new byte[24 * 9 + 11];
+
+        cipher.initialise(keyB);
+        byte[] expected = encryptEachBlock(data, 5, 9);
+        cipher.encryptBlocks(data, 5, out, 11, 9);
+
+        byte[] actual = new byte[24 * 9];
+        System.arraycopy(out, 11, actual, 0, actual.length);
+        assertArrayEquals(expected, actual);
+        assertArrayEquals(new byte[11], Arrays.copyOf(out, 11));
+    }
+
+    @Test
+    @Order(3)
+    void bulkEncryptDecryptTest() {
+        byte[] plaintext = source(24 * 33);
+        byte[] ciphertext = new byte[plaintext.length];
+        byte[] recovered = new byte[plaintext.length];
+
+        cipher.initialise(keyB);
+        cipher.encryptBlocks(plaintext, 0, ciphertext, 0, 33);
+        cipher.decryptBlocks(ciphertext, 0, recovered, 0, 33);
+
+        assertArrayEquals(plaintext, recovered);
+    }
+
+    @Test
+    @Order(4)
+    void bulkBoundsTest() {
+        byte[] data = new byte[24 * 2];
+
+        cipher.initialise(keyA);
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.encryptBlocks(data, 1, data, 1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.decryptBlocks(data, 0, new byte[24], 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> cipher.encryptBlocks(data, 0, data, 0, -1));
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CompiledKeyTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void compiledEncryptTest() {
+        byte[] block = new byte[24];
+        for (int i = 0; i < 24; i++) {
+            block[i] = (byte)(0x1b & i);
+        }
+
+        cipher.initialise(keyA);
+        cipher.compileKey();
+        cipher.encrypt(block);
+
+        byte[] expectedOutput = new byte[] {
+                (byte)0x2A,(byte)0xFA,(byte)0x97,(byte)0x6B,(byte)0xE7,(byte)0xCB,(byte)0x76,
+                (byte)0xA9,(byte)0x4B,(byte)0xE2,(byte)0xB4,(byte)0x78,(byte)0x33,(byte)0x5B,
+                (byte)0x57,(byte)0xFB,(byte)0x74,(byte)0x34,(byte)0xC2,(byte)0x8B,(byte)0x88,
+                (byte)0x55,(byte)0xB7,(byte)0xC3
+        };
+
+        assertArrayEquals(expectedOutput, block);
+    }
+
+    @Test
+    @Order(1)
+    void compiledBulkMatchesScalarTest() {
+        byte[] data = source(24 * 40);
+        byte[] expected = data.clone();
+
+        reference.initialise(keyB);
+        reference.encryptBlocks(expected, 0, expected, 0, 40);
+
+        cipher.initialise(keyB);
+        cipher.compileKey();
+        cipher.encryptBlocks(data, 0, data, 0, 40);
+        assertArrayEquals(expected, data);
+
+        cipher.decryptBlocks(data, 0, data, 0, 40);
+        assertArrayEquals(source(24 * 40), data);
+    }
+
+    @Test
+    @Order(2)
+    void reinitialiseDropsCompiledKeyTest() {
+        byte[] data = source(24 * 3);
+        byte[] expected = data.clone();
+
+        reference.initialise(keyA);
+        reference.encryptBlocks(expected, 0, expected, 0, 3);
+
+        cipher.initialise(keyB);
+        cipher.compileKey();
+        cipher.initialise(keyA);
+        cipher.encryptBlocks(data, 0, data, 0, 3);
+
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    @Order(3)
+    void compileBeforeInitialiseTest() {
+        assertThrows(IllegalStateException.class, () -> new CAST384().compileKey());
+    }
+}
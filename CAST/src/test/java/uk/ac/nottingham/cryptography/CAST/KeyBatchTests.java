@@ -0,0 +1,78 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CASTKeySet;
+import uk.ac.nottingham.cryptography.KeyBatch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class KeyBatchTests {
+    private final CAST384 cipher = new CAST384();
+
+    // 13 keys: not a multiple of the group size, and some shorter than 48 bytes
+    private static byte[][] keys() {
+        byte[][] keys = new byte[13][];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = new byte[k % 3 == 0 ? 16 + k : 48];
+            for (int i = 0; i < keys[k].length; i++) {
+                keys[k][i] = (byte) (i * (k + 5) + k);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    @Order(0)
+    void batchMatchesInitialiseTest() {
+        byte[][] keys = keys();
+
+        for (boolean parallel : new boolean[] { false, true }) {
+            KeyBatch batch = KeyBatch.expand(keys, parallel);
+            assertEquals(keys.length, batch.size());
+
+            for (int k = 0; k < keys.length; k++) {
+                cipher.initialise(keys[k]);
+                CASTKeySet set = batch.keySet(k);
+                assertArrayEquals(cipher.getK().getM(), set.getM());
+                assertArrayEquals(cipher.getK().getR(), set.getR());
+            }
+        }
+    }
+
+    @Test
+    @Order(1)
+    void structureOfArraysLayoutTest() {
+        byte[][] keys = keys();
+        KeyBatch batch = KeyBatch.expand(keys);
+
+        cipher.initialise(keys[6]);
+        for (int r = 0; r < 72; r++) {
+            assertEquals(cipher.getK().getM()[r], batch.getM()[r * keys.length + 6]);
+            assertEquals(cipher.getK().getR()[r], batch.getR()[r * keys.length + 6]);
+        }
+    }
+
+    @Test
+    @Order(2)
+    void setRoundKeysTest() {
+        byte[][] keys = keys();
+        KeyBatch batch = KeyBatch.expand(keys);
+        byte[] expected = new byte[48];
+        byte[] actual = new byte[48];
+
+        cipher.initialise(keys[4]);
+        cipher.encryptBlocks(expected, 0, expected, 0, 2);
+        CAST384 other = new CAST384();
+        other.setRoundKeys(batch.keySet(4));
+        other.encryptBlocks(actual, 0, actual, 0, 2);
+
+        assertArrayEquals(expected, actual);
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.keySet(13));
+        assertThrows(IllegalArgumentException.class, () -> other.setRoundKeys(new CASTKeySet(new int[6], new int[6])));
+    }
+}
@@ -0,0 +1,203 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CASTKeySet;
+import uk.ac.nottingham.cryptography.KeyCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class KeyCacheTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+    private static final byte[] keyC;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+        keyC = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+            keyC[i] = (byte) (i * 5 + 1);
+        }
+    }
+
+    private void assertKeyedWith(byte[] key, CASTKeySet actual) {
+        reference.initialise(key);
+        assertArrayEquals(reference.getK().getM(), actual.getM());
+        assertArrayEquals(reference.getK().getR(), actual.getR());
+    }
+
+    @Test
+    @Order(0)
+    void hitAndMissTest() {
+        KeyCache cache = new KeyCache(4);
+
+        cache.initialise(cipher, keyA);
+        assertKeyedWith(keyA, cipher.getK());
+        cache.initialise(cipher, keyB);
+        assertKeyedWith(keyB, cipher.getK());
+        cache.initialise(cipher, keyA);
+        assertKeyedWith(keyA, cipher.getK());
+        assertKeyedWith(keyB, cache.get(keyB));
+
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    @Order(1)
+    void paddedKeysShareEntryTest() {
+        KeyCache cache = new KeyCache(4);
+        byte[] shortKey = Arrays.copyOf(keyB, 20);
+
+        cache.initialise(cipher, shortKey);
+        cache.initialise(cipher, Arrays.copyOf(shortKey, 48));
+
+        assertKeyedWith(shortKey, cipher.getK());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @Order(2)
+    void leastRecentlyUsedEvictionTest() {
+        KeyCache cache = new KeyCache(2);
+
+        cache.get(keyA);
+        cache.get(keyB);
+        cache.get(keyA);        // B is now the least recently used
+        cache.get(keyC);        // Evicts B
+
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+
+        cache.get(keyA);
+        assertEquals(2, cache.hits());
+        cache.get(keyB);
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    @Order(3)
+    void cachedKeysAreNotSharedTest() {
+        KeyCache cache = new KeyCache(2);
+
+        CASTKeySet first = cache.get(keyA);
+        Arrays.fill(first.getM(), 0);
+        assertKeyedWith(keyA, cache.get(keyA));
+
+        // Rekeying the cipher in place must not reach the cached copy
+        cache.initialise(cipher, keyA);
+        cipher.rekey(keyB, 0, 48);
+        cache.initialise(cipher, keyA);
+        assertKeyedWith(keyA, cipher.getK());
+    }
+
+    @Test
+    @Order(4)
+    void clearAndCapacityTest() {
+        KeyCache cache = new KeyCache(3);
+        cache.get(keyA);
+        cache.get(keyB);
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.evictions());
+        assertThrows(IllegalArgumentException.class, () -> new KeyCache(0));
+    }
+
+    @Test
+    @Order(5)
+    void concurrentEvictionTest() throws InterruptedException {
+        // More keys than capacity, so hits race evictions zeroing the same entries
+        KeyCache cache = new KeyCache(3);
+        byte[][] keys = {keyA, keyB, keyC, Arrays.copyOf(keyA, 20), Arrays.copyOf(keyB, 30)};
+        CASTKeySet[] expected = new CASTKeySet[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            CAST384 c = new CAST384();
+            c.initialise(keys[k]);
+            expected[k] = c.getK();
+        }
+
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                CAST384 own = new CAST384();
+                for (int i = 0; i < 2000 && failure.get() == null; i++) {
+                    int k = (i * 7 + seed) % keys.length;
+                    CASTKeySet actual = (i & 1) == 0 ? cache.get(keys[k]) : keyed(cache, own, keys[k]);
+                    if (!Arrays.equals(expected[k].getM(), actual.getM())
+                            || !Arrays.equals(expected[k].getR(), actual.getR())) {
+                        failure.set("key " + k + " at iteration " + i);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(cache.size() <= cache.capacity());
+        assertEquals(8000, cache.hits() + cache.misses());
+    }
+
+    @Test
+    @Order(6)
+    void exactLeastRecentlyUsedBelowSampleTest() {
+        // Capacity + 1 entries fit in one sample, so every eviction must take the true LRU key
+        int capacity = 7;
+        KeyCache cache = new KeyCache(capacity);
+        Map<Integer, Boolean> model = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        Random random = new Random(384);
+        long hits = 0;
+        for (int i = 0; i < 500; i++) {
+            int k = i < capacity + 1 ? i : random.nextInt(12);
+            byte[] key = new byte[48];
+            Arrays.fill(key, (byte) k);
+            if (model.put(k, Boolean.TRUE) != null) {
+                hits++;
+            }
+            assertKeyedWith(key, cache.get(key));
+            assertEquals(hits, cache.hits(), "lookup " + i);
+        }
+        assertEquals(capacity, cache.size());
+    }
+
+    private static CASTKeySet keyed(KeyCache cache, CAST384 cipher, byte[] key) {
+        cache.initialise(cipher, key);
+        return cipher.getK();
+    }
+}
@@ -0,0 +1,116 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CAST384Key;
+import uk.ac.nottingham.cryptography.CASTKeySet;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class KeyObjectTests {
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void matchesCipherTest() {
+        CAST384Key key = CAST384Key.of(keyA);
+        reference.initialise(keyA);
+
+        byte[] expected = source(24 * 11);
+        reference.encryptBlocks(expected, 0, expected, 0, 11);
+
+        byte[] actual = new byte[24 * 11 + 4];
+        key.encryptBlocks(source(24 * 11), 0, actual, 4, 11);
+        assertArrayEquals(expected, Arrays.copyOfRange(actual, 4, actual.length));
+
+        byte[] block = source(24);
+        key.encrypt(block, 0, block, 0);
+        assertArrayEquals(Arrays.copyOf(expected, 24), block);
+        key.decrypt(block, 0, block, 0);
+        assertArrayEquals(source(24), block);
+
+        key.decryptBlocks(actual, 4, actual, 4, 11);
+        assertArrayEquals(source(24 * 11), Arrays.copyOfRange(actual, 4, actual.length));
+    }
+
+    @Test
+    @Order(1)
+    void keyIsImmutableTest() {
+        byte[] material = keyB.clone();
+        CAST384Key key = CAST384Key.of(material, 0, 48);
+        Arrays.fill(material, (byte) 0);
+
+        CASTKeySet copy = key.toKeySet();
+        Arrays.fill(copy.getM(), 0);
+
+        // A cipher keyed from the shared key and then rekeyed must not touch it
+        CAST384 cipher = new CAST384();
+        cipher.initialise(key);
+        cipher.rekey(keyA, 0, 48);
+
+        reference.initialise(keyB);
+        assertArrayEquals(reference.getK().getM(), key.toKeySet().getM());
+        assertArrayEquals(reference.getK().getR(), key.toKeySet().getR());
+    }
+
+    @Test
+    @Order(2)
+    void sharedAcrossThreadsTest() throws InterruptedException {
+        CAST384Key key = CAST384Key.of(keyA);
+        reference.initialise(keyA);
+        byte[] expected = source(24 * 64);
+        reference.encryptBlocks(expected, 0, expected, 0, 64);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        byte[] data = source(24 * 64);
+                        key.encryptBlocks(data, 0, data, 0, 64);
+                        assertArrayEquals(expected, data);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    @Order(3)
+    void boundsTest() {
+        CAST384Key key = CAST384Key.of(keyA);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> key.encrypt(new byte[23], 0, new byte[24], 0));
+        assertThrows(IllegalArgumentException.class, () -> key.encryptBlocks(new byte[24], 0, new byte[24], 0, -1));
+        assertThrows(IllegalArgumentException.class, () -> CAST384Key.of(new CASTKeySet(new int[6], new int[6])));
+    }
+}
@@ -0,0 +1,174 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CASTKeySet;
+import uk.ac.nottingham.cryptography.KeyRing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class KeyRingTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private Path dir;
+
+    private static byte[] key(int id) {
+        byte[] key = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            key[i] = (byte) (i * 13 + id * 7);
+        }
+        return key;
+    }
+
+    private void assertKeyedWith(byte[] key, CASTKeySet actual) {
+        reference.initialise(key);
+        assertArrayEquals(reference.getK().getM(), actual.getM());
+        assertArrayEquals(reference.getK().getR(), actual.getR());
+    }
+
+    @BeforeAll
+    void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("keyring");
+    }
+
+    @AfterAll
+    void deleteDirectory() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    @Order(0)
+    void putAndLookupTest() throws IOException {
+        try (KeyRing ring = KeyRing.create(dir.resolve("lookup.ring"), 100)) {
+            ring.put(3, key(3));
+            ring.put(99, key(99));
+
+            assertEquals(100, ring.capacity());
+            assertTrue(ring.contains(3));
+            assertFalse(ring.contains(4));
+            assertNull(ring.get(4));
+            assertKeyedWith(key(3), ring.get(3));
+
+            assertTrue(ring.initialise(cipher, 99));
+            assertKeyedWith(key(99), cipher.getK());
+            assertFalse(ring.initialise(cipher, 50));
+            assertKeyedWith(key(99), cipher.getK());
+        }
+    }
+
+    @Test
+    @Order(1)
+    void reopenTest() throws IOException {
+        Path file = dir.resolve("reopen.ring");
+        try (KeyRing ring = KeyRing.create(file, 10)) {
+            for (int id = 0; id < 10; id += 2) {
+                ring.put(id, key(id));
+            }
+        }
+
+        try (KeyRing ring = KeyRing.open(file)) {
+            assertEquals(10, ring.capacity());
+            for (int id = 0; id < 10; id++) {
+                assertEquals(id % 2 == 0, ring.contains(id));
+            }
+
+            assertTrue(ring.initialise(cipher, 6));
+            byte[] expected = new byte[24 * 3];
+            byte[] actual = new byte[24 * 3];
+            reference.initialise(key(6));
+            reference.encryptBlocks(expected, 0, expected, 0, 3);
+            cipher.encryptBlocks(actual, 0, actual, 0, 3);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    @Order(2)
+    void replaceAndRemoveTest() throws IOException {
+        try (KeyRing ring = KeyRing.create(dir.resolve("replace.ring"), 4)) {
+            ring.put(1, key(1));
+            ring.put(1, key(2));
+            assertKeyedWith(key(2), ring.get(1));
+
+            ring.remove(1);
+            assertFalse(ring.contains(1));
+            assertNull(ring.get(1));
+        }
+    }
+
+    @Test
+    @Order(3)
+    void invalidRingTest() throws IOException {
+        Path file = dir.resolve("bounds.ring");
+        try (KeyRing ring = KeyRing.create(file, 4)) {
+            assertThrows(IndexOutOfBoundsException.class, () -> ring.put(4, key(4)));
+            assertThrows(IndexOutOfBoundsException.class, () -> ring.get(-1));
+        }
+        assertThrows(IOException.class, () -> KeyRing.create(file, 4));
+
+        Path garbage = dir.resolve("garbage.ring");
+        Files.write(garbage, new byte[100]);
+        assertThrows(IOException.class, () -> KeyRing.open(garbage));
+    }
+
+    @Test
+    @Order(4)
+    void closedRingTest() throws IOException {
+        KeyRing ring = KeyRing.create(dir.resolve("closed.ring"), 4);
+        ring.put(0, key(0));
+        ring.close();
+        ring.close();
+
+        assertThrows(IllegalStateException.class, () -> ring.put(1, key(1)));
+        assertThrows(IllegalStateException.class, () -> ring.remove(0));
+        assertKeyedWith(key(0), ring.get(0));
+    }
+
+    @Test
+    @Order(5)
+    void removeDuringLookupTest() throws Exception {
+        try (KeyRing ring = KeyRing.create(dir.resolve("race.ring"), 2)) {
+            ring.put(0, key(0));
+            ring.put(1, key(1));
+            CAST384 looker = new CAST384();
+            assertTrue(ring.initialise(looker, 0));
+
+            // A writer keeps adding and removing key 1; the cipher must only ever
+            // hold key 0 (lookup missed) or key 1 (lookup hit), never a mixture
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    ring.remove(1);
+                    ring.put(1, key(1));
+                }
+            });
+            writer.start();
+            reference.initialise(key(0));
+            int[] m0 = reference.getK().getM().clone();
+            reference.initialise(key(1));
+            int[] m1 = reference.getK().getM().clone();
+            while (writer.isAlive()) {
+                assertTrue(ring.initialise(looker, 0));
+                boolean hit = ring.initialise(looker, 1);
+                assertArrayEquals(hit ? m1 : m0, looker.getK().getM());
+            }
+            writer.join();
+        }
+    }
+}
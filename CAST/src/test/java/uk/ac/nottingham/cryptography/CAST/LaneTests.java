@@ -0,0 +1,76 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class LaneTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+
+    static {
+        keyA = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void lanesMatchScalarTest() {
+        reference.initialise(keyA);
+        reference.setLanes(1);
+
+        for (int lanes : new int[] { 2, 4, 8 }) {
+            cipher.initialise(keyA);
+            cipher.setLanes(lanes);
+
+            // Block counts that leave every possible remainder for the scalar tail
+            for (int blocks = 0; blocks <= 19; blocks++) {
+                byte[] expected = source(blocks * 24);
+                byte[] actual = expected.clone();
+                reference.encryptBlocks(expected, 0, expected, 0, blocks);
+                cipher.encryptBlocks(actual, 0, actual, 0, blocks);
+                assertArrayEquals(expected, actual);
+
+                cipher.decryptBlocks(actual, 0, actual, 0, blocks);
+                assertArrayEquals(source(blocks * 24), actual);
+            }
+        }
+    }
+
+    @Test
+    @Order(1)
+    void lanesOutOfPlaceTest() {
+        byte[] data = source(24 * 21 + 3);
+        byte[] expected = new byte[24 * 21];
+        byte[] actual = new byte[24 * 21 + 7];
+
+        reference.initialise(keyA);
+        reference.setLanes(1);
+        reference.encryptBlocks(data, 3, expected, 0, 21);
+
+        cipher.initialise(keyA);
+        cipher.setLanes(8);
+        cipher.encryptBlocks(data, 3, actual, 7, 21);
+
+        byte[] slice = new byte[24 * 21];
+        System.arraycopy(actual, 7, slice, 0, slice.length);
+        assertArrayEquals(expected, slice);
+    }
+
+    @Test
+    @Order(2)
+    void invalidLaneCountTest() {
+        assertThrows(IllegalArgumentException.class, () -> cipher.setLanes(3));
+        assertThrows(IllegalArgumentException.class, () -> cipher.setLanes(0));
+    }
+}
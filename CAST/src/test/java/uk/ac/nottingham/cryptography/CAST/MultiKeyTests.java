@@ -0,0 +1,83 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.KeyBatch;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class MultiKeyTests {
+    private final CAST384 cipher = new CAST384();
+
+    private static final byte[][] keys;
+
+    static {
+        keys = new byte[10][48];
+
+        for (int k = 0; k < keys.length; k++) {
+            for (int i = 0; i < 48; i++) {
+                keys[k][i] = (byte) (i * 3 + k * 41);
+            }
+        }
+    }
+
+    private byte[] encryptEachUnderOwnKey(byte[] data, int first, int blockCount) {
+        byte[] expected = new byte[blockCount * 24];
+        for (int n = 0; n < blockCount; n++) {
+            byte[] block = Arrays.copyOfRange(data, n * 24, n * 24 + 24);
+            cipher.initialise(keys[first + n]);
+            cipher.encrypt(block);
+            System.arraycopy(block, 0, expected, n * 24, 24);
+        }
+        return expected;
+    }
+
+    @Test
+    @Order(0)
+    void blockPerKeyTest() {
+        KeyBatch batch = KeyBatch.expand(keys);
+        byte[] data = source(24 * keys.length);
+        byte[] expected = encryptEachUnderOwnKey(data, 0, keys.length);
+
+        batch.encryptBlocks(data, 0, data, 0);
+        assertArrayEquals(expected, data);
+
+        batch.decryptBlocks(data, 0, data, 0);
+        assertArrayEquals(source(24 * keys.length), data);
+    }
+
+    @Test
+    @Order(1)
+    void keyRangeTest() {
+        KeyBatch batch = KeyBatch.expand(keys);
+
+        // Start and length off the lane boundaries
+        for (int first = 0; first < 4; first++) {
+            for (int count = 0; count + first <= keys.length; count++) {
+                byte[] data = source(24 * count + 3);
+                byte[] out = new byte[24 * count + 5];
+                batch.encryptBlocks(first, data, 3, out, 5, count);
+
+                byte[] expected = encryptEachUnderOwnKey(Arrays.copyOfRange(data, 3, data.length), first, count);
+                assertArrayEquals(expected, Arrays.copyOfRange(out, 5, out.length));
+            }
+        }
+    }
+
+    @Test
+    @Order(2)
+    void boundsTest() {
+        KeyBatch batch = KeyBatch.expand(keys);
+        byte[] data = new byte[24 * 11];
+
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.encryptBlocks(1, data, 0, data, 0, 10));
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.decryptBlocks(new byte[24], 0, data, 0));
+        assertThrows(IllegalArgumentException.class, () -> batch.encryptBlocks(0, data, 0, data, 0, -1));
+    }
+}
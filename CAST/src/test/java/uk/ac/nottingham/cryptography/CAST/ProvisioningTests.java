@@ -0,0 +1,118 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CASTCipher;
+import uk.ac.nottingham.cryptography.CTRMode;
+import uk.ac.nottingham.cryptography.CipherProvider;
+import uk.ac.nottingham.cryptography.CipherProvider.Lease;
+import uk.ac.nottingham.cryptography.CipherProvider.Pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ProvisioningTests {
+
+    private static final byte[] keyA;
+
+    static {
+        keyA = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void providerLookupTest() {
+        CASTCipher first = CipherProvider.newCipher();
+        CASTCipher second = CipherProvider.newCipher();
+
+        assertTrue(first instanceof CAST384);
+        assertNotSame(first, second);
+        assertTrue(CipherProvider.newMode() instanceof CTRMode);
+    }
+
+    @Test
+    @Order(1)
+    void keyedFactoryTest() {
+        CASTCipher reference = new CAST384();
+        reference.initialise(keyA);
+        byte[] expected = new byte[24];
+        reference.encrypt(expected);
+
+        CASTCipher cipher = CipherProvider.keyed(keyA).get();
+        byte[] actual = new byte[24];
+        cipher.encrypt(actual);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(2)
+    void threadLocalPoolTest() throws InterruptedException {
+        Pool<CASTCipher> pool = CipherProvider.threadLocal(CipherProvider.keyed(keyA));
+
+        CASTCipher mine;
+        try (Lease<CASTCipher> lease = pool.acquire()) {
+            mine = lease.get();
+        }
+        try (Lease<CASTCipher> lease = pool.acquire()) {
+            assertSame(mine, lease.get());
+        }
+
+        CASTCipher[] other = new CASTCipher[1];
+        Thread thread = new Thread(() -> {
+            try (Lease<CASTCipher> lease = pool.acquire()) {
+                other[0] = lease.get();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotSame(mine, other[0]);
+    }
+
+    @Test
+    @Order(3)
+    void boundedPoolTest() throws InterruptedException {
+        AtomicInteger created = new AtomicInteger();
+        Pool<CASTCipher> pool = CipherProvider.bounded(() -> {
+            created.incrementAndGet();
+            return CipherProvider.keyed(keyA).get();
+        }, 2);
+
+        Lease<CASTCipher> a = pool.acquire();
+        Lease<CASTCipher> b = pool.acquire();
+        assertNotSame(a.get(), b.get());
+
+        // A third lease has to wait for one of the first two
+        CASTCipher[] third = new CASTCipher[1];
+        Thread waiter = new Thread(() -> {
+            try (Lease<CASTCipher> lease = pool.acquire()) {
+                third[0] = lease.get();
+            }
+        });
+        waiter.start();
+        waiter.join(100);
+        assertTrue(waiter.isAlive());
+
+        CASTCipher released = a.get();
+        a.close();
+        waiter.join();
+        assertSame(released, third[0]);
+        assertEquals(2, created.get());
+
+        b.close();
+        assertThrows(IllegalStateException.class, a::get);
+        assertThrows(IllegalArgumentException.class, () -> CipherProvider.bounded(CAST384::new, 0));
+    }
+}
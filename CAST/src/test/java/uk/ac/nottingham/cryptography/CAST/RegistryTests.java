@@ -0,0 +1,110 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.EngineRegistry;
+import uk.ac.nottingham.cryptography.EngineRegistry.Engine;
+import uk.ac.nottingham.cryptography.EngineRegistry.SizeClass;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RegistryTests {
+
+    private static final byte[] keyA;
+
+    static {
+        keyA = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i * 5 + 2);
+        }
+    }
+
+    @AfterAll
+    void restore() {
+        System.clearProperty(EngineRegistry.PROPERTY);
+    }
+
+    @Test
+    @Order(0)
+    void metadataTest() {
+        assertTrue(EngineRegistry.engines().contains(Engine.SCALAR));
+        assertTrue(EngineRegistry.engines().contains(Engine.INTERLEAVED));
+        assertEquals(Set.of("jdk.incubator.vector"), Engine.VECTOR.requiredModules());
+        assertTrue(Engine.SCALAR.requiredModules().isEmpty());
+        assertTrue(Engine.BITSLICED.isBulk());
+        assertFalse(Engine.SCALAR.isBulk());
+
+        assertEquals(SizeClass.SINGLE, SizeClass.of(1));
+        assertEquals(SizeClass.SMALL, SizeClass.of(63));
+        assertEquals(SizeClass.BULK, SizeClass.of(64));
+    }
+
+    @Test
+    @Order(1)
+    void overrideTest() {
+        System.setProperty(EngineRegistry.PROPERTY, "scalar");
+        EngineRegistry.reload();
+        for (Engine engine : EngineRegistry.selections().values()) {
+            assertEquals(Engine.SCALAR, engine);
+        }
+
+        System.setProperty(EngineRegistry.PROPERTY, "single=packed, small=interleaved, bulk=bitsliced");
+        EngineRegistry.reload();
+        Map<SizeClass, Engine> selections = EngineRegistry.selections();
+        assertEquals(Engine.PACKED, selections.get(SizeClass.SINGLE));
+        assertEquals(Engine.INTERLEAVED, selections.get(SizeClass.SMALL));
+        assertEquals(Engine.BITSLICED, selections.get(SizeClass.BULK));
+
+        System.setProperty(EngineRegistry.PROPERTY, "turbo");
+        assertThrows(IllegalArgumentException.class, EngineRegistry::reload);
+    }
+
+    @Test
+    @Order(2)
+    void autoTunedTest() {
+        // Selections from the previous test: a different engine per size class
+        System.setProperty(EngineRegistry.PROPERTY, "single=packed, small=interleaved, bulk=bitsliced");
+        EngineRegistry.reload();
+
+        CAST384 reference = new CAST384();
+        reference.initialise(keyA);
+        CAST384 tuned = new CAST384();
+        tuned.initialise(keyA);
+        tuned.setAutoTuned(true);
+
+        assertEquals(64, tuned.getParallelBlocks());
+        for (int blocks : new int[] { 1, 5, 64, 100 }) {
+            byte[] plain = source(blocks * 24);
+            byte[] expected = new byte[plain.length];
+            byte[] actual = new byte[plain.length];
+            reference.encryptBlocks(plain, 0, expected, 0, blocks);
+            tuned.encryptBlocks(plain, 0, actual, 0, blocks);
+            assertArrayEquals(expected, actual);
+
+            tuned.decryptBlocks(actual, 0, actual, 0, blocks);
+            assertArrayEquals(plain, actual);
+        }
+    }
+
+    @Test
+    @Order(3)
+    void calibrationTest() {
+        System.clearProperty(EngineRegistry.PROPERTY);
+        EngineRegistry.reload();
+        Map<SizeClass, Engine> selections = EngineRegistry.selections();
+        for (SizeClass size : SizeClass.values()) {
+            assertTrue(selections.get(size).isAvailable());
+        }
+    }
+}
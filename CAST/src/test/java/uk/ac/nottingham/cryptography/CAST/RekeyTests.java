@@ -0,0 +1,119 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CASTKeySet;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RekeyTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+        }
+    }
+
+    private void assertSameKeys(CASTKeySet expected, CASTKeySet actual) {
+        assertArrayEquals(expected.getM(), actual.getM());
+        assertArrayEquals(expected.getR(), actual.getR());
+    }
+
+    @Test
+    @Order(0)
+    void rekeyMatchesInitialiseTest() {
+        byte[] framed = new byte[5 + 48 + 7];
+        System.arraycopy(keyA, 0, framed, 5, 48);
+
+        reference.initialise(keyA);
+        cipher.rekey(framed, 5, 48);
+        assertSameKeys(reference.getK(), cipher.getK());
+
+        // Short keys are zero-padded, long keys truncated to 48 bytes
+        reference.initialise(Arrays.copyOf(keyB, 20));
+        cipher.rekey(keyB, 0, 20);
+        assertSameKeys(reference.getK(), cipher.getK());
+
+        reference.initialise(keyA);
+        cipher.rekey(framed, 5, framed.length - 5);
+        assertSameKeys(reference.getK(), cipher.getK());
+    }
+
+    @Test
+    @Order(1)
+    void rekeyOverwritesInPlaceTest() {
+        cipher.initialise(keyA);
+        CASTKeySet keys = cipher.getK();
+        int[] m = keys.getM();
+
+        cipher.rekey(keyB, 0, 48);
+        reference.initialise(keyB);
+
+        assertSame(keys, cipher.getK());
+        assertSame(m, cipher.getK().getM());
+        assertSameKeys(reference.getK(), cipher.getK());
+    }
+
+    @Test
+    @Order(2)
+    void enginesFollowRekeyTest() {
+        byte[] expected = source(24 * 9);
+        reference.initialise(keyB);
+        reference.encryptBlocks(expected, 0, expected, 0, 9);
+
+        for (int lanes : new int[] { 1, 4 }) {
+            cipher.initialise(keyA);
+            cipher.setLanes(lanes);
+            cipher.encryptBlocks(source(24 * 9), 0, new byte[24 * 9], 0, 9);
+            cipher.rekey(keyB, 0, 48);
+
+            byte[] actual = source(24 * 9);
+            cipher.encryptBlocks(actual, 0, actual, 0, 9);
+            assertArrayEquals(expected, actual);
+        }
+
+        cipher.initialise(keyA);
+        cipher.compileKey();
+        cipher.rekey(keyB, 0, 48);
+        byte[] actual = source(24 * 9);
+        cipher.encryptBlocks(actual, 0, actual, 0, 9);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(3)
+    void rekeyLeavesInstalledKeysTest() {
+        reference.initialise(keyA);
+        CASTKeySet installed = new CASTKeySet(reference.getK().getM().clone(), reference.getK().getR().clone());
+
+        cipher.setRoundKeys(installed);
+        cipher.rekey(keyB, 0, 48);
+
+        assertSameKeys(reference.getK(), installed);
+        reference.initialise(keyB);
+        assertSameKeys(reference.getK(), cipher.getK());
+    }
+
+    @Test
+    @Order(4)
+    void rekeyBoundsTest() {
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.rekey(keyA, 10, 48));
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.rekey(keyA, -1, 4));
+    }
+}
@@ -0,0 +1,97 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384Key;
+import uk.ac.nottingham.cryptography.SharedCipher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class RotationTests {
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) i;
+            keyB[i] = (byte) (0xA5 ^ i);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void rotateTest() {
+        CAST384Key a = CAST384Key.of(keyA);
+        CAST384Key b = CAST384Key.of(keyB);
+        SharedCipher shared = new SharedCipher(a);
+        byte[] plain = source(4 * 24);
+
+        byte[] expected = new byte[plain.length];
+        b.encryptBlocks(plain, 0, expected, 0, 4);
+
+        assertSame(a, shared.rotate(b));
+        assertSame(b, shared.current());
+        byte[] actual = new byte[plain.length];
+        shared.encryptBlocks(plain, 0, actual, 0, 4);
+        assertArrayEquals(expected, actual);
+
+        shared.decryptBlocks(actual, 0, actual, 0, 4);
+        assertArrayEquals(plain, actual);
+
+        assertFalse(shared.rotate(a, a));
+        assertTrue(shared.rotate(b, a));
+        assertSame(a, shared.current());
+    }
+
+    @Test
+    @Order(1)
+    void concurrentRotationTest() throws InterruptedException {
+        byte[] plain = source(8 * 24);
+        byte[] underA = new byte[plain.length];
+        byte[] underB = new byte[plain.length];
+        CAST384Key.of(keyA).encryptBlocks(plain, 0, underA, 0, 8);
+        CAST384Key.of(keyB).encryptBlocks(plain, 0, underB, 0, 8);
+
+        SharedCipher shared = SharedCipher.of(keyA);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger bad = new AtomicInteger();
+
+        // Every result must be wholly under one key or the other, never a mixture
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                byte[] out = new byte[plain.length];
+                while (!stop.get()) {
+                    shared.encryptBlocks(plain, 0, out, 0, 8);
+                    if (!Arrays.equals(out, underA) && !Arrays.equals(out, underB)) {
+                        bad.incrementAndGet();
+                    }
+                }
+            });
+            readers[t].start();
+        }
+
+        for (int i = 0; i < 200; i++) {
+            shared.rotate(i % 2 == 0 ? keyB : keyA);
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, bad.get());
+    }
+}
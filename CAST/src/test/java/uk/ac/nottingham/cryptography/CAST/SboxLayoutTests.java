@@ -0,0 +1,79 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class SboxLayoutTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+            keyB[i] = (byte) (i * 11);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void packedLayoutsMatchSplitTest() {
+        for (byte[] key : new byte[][] { keyA, keyB }) {
+            reference.initialise(key);
+            reference.setLanes(1);
+
+            for (CAST384.SboxLayout layout : CAST384.SboxLayout.values()) {
+                cipher.initialise(key);
+                cipher.setSboxLayout(layout);
+
+                for (int blocks = 0; blocks <= 9; blocks++) {
+                    byte[] expected = source(blocks * 24);
+                    byte[] actual = expected.clone();
+                    reference.encryptBlocks(expected, 0, expected, 0, blocks);
+                    cipher.encryptBlocks(actual, 0, actual, 0, blocks);
+                    assertArrayEquals(expected, actual);
+
+                    cipher.decryptBlocks(actual, 0, actual, 0, blocks);
+                    assertArrayEquals(source(blocks * 24), actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Order(1)
+    void layoutSurvivesRekeyTest() {
+        byte[] expected = source(24 * 5);
+        byte[] actual = expected.clone();
+
+        cipher.setSboxLayout(CAST384.SboxLayout.PACKED_DIRECT);
+        cipher.initialise(keyA);
+        cipher.encryptBlocks(actual, 0, actual, 0, 5);
+        cipher.initialise(keyB);
+        cipher.encryptBlocks(actual, 0, actual, 0, 5);
+
+        reference.initialise(keyA);
+        reference.encryptBlocks(expected, 0, expected, 0, 5);
+        reference.initialise(keyB);
+        reference.encryptBlocks(expected, 0, expected, 0, 5);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(2)
+    void nullLayoutTest() {
+        assertThrows(NullPointerException.class, () -> cipher.setSboxLayout(null));
+    }
+}
@@ -0,0 +1,78 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CipherMode;
+
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class VectorTests {
+    private final CAST384 cipher = new CAST384();
+    private final CAST384 reference = new CAST384();
+    private final CipherMode mode = ServiceLoader.load(CipherMode.class).findFirst().orElseThrow();
+    private final CipherMode referenceMode = ServiceLoader.load(CipherMode.class).findFirst().orElseThrow();
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 3 + 19);
+        }
+    }
+
+    @Test
+    @Order(0)
+    void vectorEngineAvailableTest() {
+        cipher.initialise(keyA);
+        assumeTrue(cipher.setVectorized(true), "jdk.incubator.vector not available");
+    }
+
+    @Test
+    @Order(1)
+    void vectorMatchesScalarTest() {
+        reference.initialise(keyA);
+        reference.setLanes(1);
+        cipher.initialise(keyA);
+        cipher.setVectorized(true);
+
+        // Block counts around every vector width (4 to 16 lanes) and their remainders
+        for (int blocks = 0; blocks <= 40; blocks++) {
+            byte[] expected = source(blocks * 24);
+            byte[] actual = expected.clone();
+            reference.encryptBlocks(expected, 0, expected, 0, blocks);
+            cipher.encryptBlocks(actual, 0, actual, 0, blocks);
+            assertArrayEquals(expected, actual);
+
+            cipher.decryptBlocks(actual, 0, actual, 0, blocks);
+            assertArrayEquals(source(blocks * 24), actual);
+        }
+    }
+
+    @Test
+    @Order(2)
+    void vectorCTRKeystreamTest() {
+        cipher.setVectorized(true);
+        byte[] expected = source(24 * 100 + 13);
+        byte[] actual = expected.clone();
+
+        referenceMode.initialise(reference, keyA, nonceA);
+        referenceMode.encrypt(expected);
+        mode.initialise(cipher, keyA, nonceA);
+        mode.encrypt(actual);
+
+        assertArrayEquals(expected, actual);
+    }
+}
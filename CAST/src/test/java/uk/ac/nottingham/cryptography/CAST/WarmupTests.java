@@ -0,0 +1,26 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class WarmupTests {
+
+    @Test
+    @Order(0)
+    void readinessTest() throws Exception {
+        CompletableFuture<Void> ready = Warmup.start();
+        assertSame(ready, Warmup.start());
+        assertSame(ready, Warmup.ready());
+
+        ready.get(60, TimeUnit.SECONDS);
+        assertTrue(Warmup.isReady());
+    }
+}
@@ -0,0 +1,191 @@
+package uk.ac.nottingham.cryptography.CAST;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class WordTests {
+    private final CAST384 cipher = new CAST384();
+
+    private static final byte[] keyA;
+
+    static {
+        keyA = new byte[48];
+
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+    }
+
+    private static int[] toInts(byte[] data) {
+        int[] words = new int[data.length / 4];
+        ByteBuffer.wrap(data).asIntBuffer().get(words);
+        return words;
+    }
+
+    private static long[] toLongs(byte[] data) {
+        long[] words = new long[data.length / 8];
+        ByteBuffer.wrap(data).asLongBuffer().get(words);
+        return words;
+    }
+
+    @Test
+    @Order(0)
+    void intWordsMatchBytesTest() {
+        byte[] data = source(24 * 7);
+        int[] words = toInts(data);
+        int[] padded = new int[words.length + 5];
+        System.arraycopy(words, 0, padded, 5, words.length);
+
+        cipher.initialise(keyA);
+        cipher.encryptBlocks(data, 0, data, 0, 7);
+        cipher.encryptWords(padded, 5, 7);
+
+        int[] actual = new int[words.length];
+        System.arraycopy(padded, 5, actual, 0, actual.length);
+        assertArrayEquals(toInts(data), actual);
+
+        cipher.decryptWords(padded, 5, 7);
+        System.arraycopy(padded, 5, actual, 0, actual.length);
+        assertArrayEquals(words, actual);
+    }
+
+    @Test
+    @Order(1)
+    void longWordsMatchBytesTest() {
+        byte[] data = source(24 * 9);
+        long[] words = toLongs(data);
+        long[] actual = words.clone();
+
+        cipher.initialise(keyA);
+        cipher.encryptBlocks(data, 0, data, 0, 9);
+        cipher.encryptWords(actual, 0, 9);
+        assertArrayEquals(toLongs(data), actual);
+
+        cipher.decryptWords(actual, 0, 9);
+        assertArrayEquals(words, actual);
+    }
+
+    @Test
+    @Order(2)
+    void columnsMatchBytesTest() {
+        int rows = 11;
+        byte[] data = source(24 * rows);
+        int[][] columns = new int[6][rows];
+        int[] words = toInts(data);
+        for (int r = 0; r < rows; r++) {
+            for (int w = 0; w < 6; w++) {
+                columns[w][r] = words[r * 6 + w];
+            }
+        }
+
+        cipher.initialise(keyA);
+        cipher.encryptBlocks(data, 0, data, 0, rows);
+        cipher.encryptColumns(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], 0, rows);
+
+        int[] expected = toInts(data);
+        for (int r = 0; r < rows; r++) {
+            for (int w = 0; w < 6; w++) {
+                assertEquals(expected[r * 6 + w], columns[w][r]);
+            }
+        }
+
+        cipher.decryptColumns(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], 2, rows - 2);
+        for (int r = 2; r < rows; r++) {
+            for (int w = 0; w < 6; w++) {
+                assertEquals(words[r * 6 + w], columns[w][r]);
+            }
+        }
+    }
+
+    @Test
+    @Order(3)
+    void wordBoundsTest() {
+        int[] words = new int[12];
+        int[] shortColumn = new int[2];
+
+        cipher.initialise(keyA);
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.encryptWords(words, 1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.decryptWords(new long[5], 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> cipher.encryptWords(words, 0, -1));
+        assertThrows(IndexOutOfBoundsException.class, () -> cipher.encryptColumns(
+                words, words, words, words, words, shortColumn, 0, 3));
+    }
+
+    @Test
+    @Order(4)
+    void configuredEngineTest() {
+        // Every engine setting applies to the word paths too; 300 blocks span two staged chunks
+        int blocks = 300;
+        byte[] data = source(24 * blocks);
+        CAST384 reference = new CAST384();
+        reference.initialise(keyA);
+        byte[] expected = data.clone();
+        reference.encryptBlocks(expected, 0, expected, 0, blocks);
+
+        Consumer<CAST384>[] settings = settings();
+        for (int s = 0; s < settings.length; s++) {
+            CAST384 configured = new CAST384();
+            configured.initialise(keyA);
+            settings[s].accept(configured);
+
+            int[] ints = new int[blocks * 6 + 3];
+            System.arraycopy(toInts(data), 0, ints, 3, blocks * 6);
+            configured.encryptWords(ints, 3, blocks);
+            assertArrayEquals(toInts(expected), Arrays.copyOfRange(ints, 3, ints.length), "int[], setting " + s);
+            configured.decryptWords(ints, 3, blocks);
+            assertArrayEquals(toInts(data), Arrays.copyOfRange(ints, 3, ints.length), "int[], setting " + s);
+
+            long[] longs = toLongs(data);
+            configured.encryptWords(longs, 0, blocks);
+            assertArrayEquals(toLongs(expected), longs, "long[], setting " + s);
+            configured.decryptWords(longs, 0, blocks);
+            assertArrayEquals(toLongs(data), longs, "long[], setting " + s);
+
+            int[][] columns = new int[6][blocks];
+            int[] words = toInts(data);
+            for (int r = 0; r < blocks; r++) {
+                for (int w = 0; w < 6; w++) {
+                    columns[w][r] = words[r * 6 + w];
+                }
+            }
+            configured.encryptColumns(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], 0, blocks);
+            int[] encrypted = toInts(expected);
+            for (int r = 0; r < blocks; r++) {
+                for (int w = 0; w < 6; w++) {
+                    assertEquals(encrypted[r * 6 + w], columns[w][r], "columns, setting " + s);
+                }
+            }
+            configured.decryptColumns(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5], 0, blocks);
+            for (int r = 0; r < blocks; r++) {
+                for (int w = 0; w < 6; w++) {
+                    assertEquals(words[r * 6 + w], columns[w][r], "columns, setting " + s);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<CAST384>[] settings() {
+        return new Consumer[] {
+                (Consumer<CAST384>) c -> c.setLanes(1),
+                (Consumer<CAST384>) c -> c.setLanes(8),
+                (Consumer<CAST384>) c -> c.setBitsliced(true),
+                (Consumer<CAST384>) c -> c.setSboxLayout(CAST384.SboxLayout.PACKED),
+                (Consumer<CAST384>) c -> c.setSboxLayout(CAST384.SboxLayout.PACKED_DIRECT),
+                (Consumer<CAST384>) c -> c.setVectorized(true),
+                (Consumer<CAST384>) c -> c.setAutoTuned(true),
+                (Consumer<CAST384>) CAST384::compileKey
+        };
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CASTCipher;
+import uk.ac.nottingham.cryptography.CipherMode;
+
+import java.nio.ByteBuffer;
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CTRBufferTests {
+    private final CASTCipher cipher = ServiceLoader.load(CASTCipher.class).findFirst().orElseThrow();
+    private final CipherMode mode = ServiceLoader.load(CipherMode.class).findFirst().orElseThrow();
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 3 + 19);
+        }
+    }
+
+    private byte[] expected(byte[] plaintext) {
+        byte[] out = plaintext.clone();
+        mode.initialise(cipher, keyA, nonceA);
+        mode.encrypt(out);
+        return out;
+    }
+
+    @Test
+    @Order(0)
+    void directBufferTest() {
+        byte[] plaintext = source(1000);
+        byte[] expected = expected(plaintext);
+
+        ByteBuffer src = ByteBuffer.allocateDirect(plaintext.length);
+        ByteBuffer dst = ByteBuffer.allocateDirect(plaintext.length);
+        src.put(plaintext).flip();
+
+        mode.initialise(cipher, keyA, nonceA);
+        mode.encrypt(src, dst);
+
+        byte[] actual = new byte[plaintext.length];
+        dst.flip().get(actual);
+        assertEquals(plaintext.length, src.position());
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(1)
+    void inPlaceStreamingBufferTest() {
+        byte[] plaintext = source(517);
+        byte[] expected = expected(plaintext);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(plaintext.length);
+        buffer.put(plaintext).flip();
+
+        // Partial blocks carried over between calls, as with encrypt(byte[])
+        mode.initialise(cipher, keyA, nonceA);
+        for (int limit : new int[] { 5, 24, 100, 101, 517 }) {
+            buffer.limit(limit);
+            mode.encrypt(buffer, buffer);
+            assertEquals(limit, buffer.position());
+        }
+
+        byte[] actual = new byte[plaintext.length];
+        buffer.flip().get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(2)
+    void heapDecryptTest() {
+        byte[] plaintext = source(240);
+        ByteBuffer ciphertext = ByteBuffer.wrap(expected(plaintext));
+        ByteBuffer recovered = ByteBuffer.allocate(plaintext.length);
+
+        mode.initialise(cipher, keyA, nonceA);
+        mode.decrypt(ciphertext, recovered);
+
+        assertArrayEquals(plaintext, recovered.array());
+    }
+}
@@ -0,0 +1,107 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CASTCipher;
+import uk.ac.nottingham.cryptography.CipherMode;
+
+import java.nio.ByteBuffer;
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CTRBulkTests {
+    private final CASTCipher cipher = ServiceLoader.load(CASTCipher.class).findFirst().orElseThrow();
+    private final CASTCipher reference = ServiceLoader.load(CASTCipher.class).findFirst().orElseThrow();
+    private final CipherMode mode = ServiceLoader.load(CipherMode.class).findFirst().orElseThrow();
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i * 9 + 1);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (0xF0 - i);
+        }
+    }
+
+    // CTR one block at a time: block n is nonce || n (big-endian), encrypted on its own
+    private byte[] expected(byte[] plaintext) {
+        reference.initialise(keyA);
+        byte[] out = plaintext.clone();
+        byte[] block = new byte[24];
+        for (int n = 0; n * 24 < out.length; n++) {
+            System.arraycopy(nonceA, 0, block, 0, 16);
+            for (int b = 0; b < 8; b++) {
+                block[16 + b] = (byte) ((long) n >>> (8 * (7 - b)));
+            }
+            reference.encrypt(block);
+            for (int i = 0; i < 24 && n * 24 + i < out.length; i++) {
+                out[n * 24 + i] ^= block[i];
+            }
+        }
+        return out;
+    }
+
+    @Test
+    @Order(0)
+    void largeBufferTest() {
+        // Several full refills plus a partial block at the end
+        byte[] plaintext = source(24 * 1000 + 13);
+        byte[] data = plaintext.clone();
+
+        mode.initialise(cipher, keyA, nonceA);
+        mode.encrypt(data);
+
+        assertArrayEquals(expected(plaintext), data);
+    }
+
+    @Test
+    @Order(1)
+    void unevenChunksTest() {
+        byte[] plaintext = source(20000);
+        byte[] expected = expected(plaintext);
+        byte[] actual = new byte[plaintext.length];
+
+        // Chunks that split blocks, longs and refills at every kind of boundary
+        mode.initialise(cipher, keyA, nonceA);
+        int[] sizes = { 1, 7, 8, 9, 23, 24, 25, 191, 6144, 6145, 3 };
+        int done = 0;
+        for (int i = 0; done < plaintext.length; i++) {
+            int n = Math.min(sizes[i % sizes.length], plaintext.length - done);
+            byte[] chunk = new byte[n];
+            System.arraycopy(plaintext, done, chunk, 0, n);
+            mode.encrypt(chunk);
+            System.arraycopy(chunk, 0, actual, done, n);
+            done += n;
+        }
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    @Order(2)
+    void directBufferTest() {
+        byte[] plaintext = source(24 * 300 + 5);
+        ByteBuffer src = ByteBuffer.allocateDirect(plaintext.length);
+        ByteBuffer dst = ByteBuffer.allocateDirect(plaintext.length);
+        src.put(plaintext).flip();
+
+        mode.initialise(cipher, keyA, nonceA);
+        src.limit(3);
+        mode.encrypt(src, dst);
+        src.limit(plaintext.length);
+        mode.encrypt(src, dst);
+
+        byte[] actual = new byte[plaintext.length];
+        dst.flip().get(actual);
+        assertArrayEquals(expected(plaintext), actual);
+    }
+}
@@ -0,0 +1,132 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CTRMode;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CTROffsetSeekTests {
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i * 3 + 1);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 13 + 2);
+        }
+    }
+
+    private static final long[] OFFSETS = {0, 1, 23, 24, 25, 1000, 24 * 300 + 7, 24 * 300 - 1};
+
+    private static CTRMode initialised() {
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        return mode;
+    }
+
+    private static byte[] expected(byte[] plaintext) {
+        byte[] out = plaintext.clone();
+        initialised().encrypt(out);
+        return out;
+    }
+
+    @Test
+    @Order(0)
+    void randomReadTest() {
+        byte[] plaintext = source(24 * 320);
+        byte[] ciphertext = expected(plaintext);
+
+        // Decrypt a short read at each offset, in an order that jumps back and forth
+        CTRMode mode = initialised();
+        for (long offset : OFFSETS) {
+            int off = (int) offset;
+            int len = Math.min(61, plaintext.length - off);
+            mode.seek(offset);
+            byte[] read = new byte[len];
+            mode.decrypt(ciphertext, off, len, read, 0);
+            assertArrayEquals(Arrays.copyOfRange(plaintext, off, off + len), read, "offset " + offset);
+        }
+    }
+
+    @Test
+    @Order(1)
+    void continuesAfterSeekTest() {
+        byte[] plaintext = source(24 * 320);
+        byte[] ciphertext = expected(plaintext);
+
+        // After a mid-block seek the stream runs on through later refills
+        CTRMode mode = initialised();
+        mode.encrypt(new byte[100]);
+        mode.seek(24 * 10 + 5);
+        byte[] rest = Arrays.copyOfRange(ciphertext, 245, ciphertext.length);
+        mode.decrypt(rest);
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 245, plaintext.length), rest);
+    }
+
+    @Test
+    @Order(2)
+    void matchesCounterSeekTest() {
+        // A large offset lands on the same keystream as seeking to its counter
+        long block = 1L << 40;
+        byte[] expected = source(50);
+        CTRMode byCounter = initialised();
+        byCounter.seek(new byte[]{0, 0, 1, 0, 0, 0, 0, 0});
+        byCounter.encrypt(expected);
+
+        byte[] actual = source(50);
+        CTRMode byOffset = initialised();
+        byOffset.seek(block * 24 + 7);
+        byOffset.encrypt(actual, 7, actual.length - 7, actual, 7);
+
+        assertArrayEquals(Arrays.copyOfRange(expected, 7, 50), Arrays.copyOfRange(actual, 7, 50));
+    }
+
+    @Test
+    @Order(3)
+    void prefetchTest() {
+        byte[] plaintext = source(24 * 320);
+        byte[] ciphertext = expected(plaintext);
+
+        CTRMode mode = initialised();
+        mode.enablePrefetch(32, 16);
+        try {
+            for (long offset : OFFSETS) {
+                int off = (int) offset;
+                int len = Math.min(500, plaintext.length - off);
+                mode.seek(offset);
+                byte[] read = new byte[len];
+                mode.decrypt(ciphertext, off, len, read, 0);
+                assertArrayEquals(Arrays.copyOfRange(plaintext, off, off + len), read, "offset " + offset);
+            }
+
+            // Back to on-demand keystream at the position the ring had reached
+            mode.seek(31);
+            mode.disablePrefetch();
+            byte[] rest = Arrays.copyOfRange(ciphertext, 31, ciphertext.length);
+            mode.decrypt(rest);
+            assertArrayEquals(Arrays.copyOfRange(plaintext, 31, plaintext.length), rest);
+        } finally {
+            mode.disablePrefetch();
+        }
+    }
+
+    @Test
+    @Order(4)
+    void invalidSeekTest() {
+        assertThrows(IllegalArgumentException.class, () -> initialised().seek(-1L));
+        assertThrows(IllegalStateException.class, () -> new CTRMode().seek(0L));
+    }
+}
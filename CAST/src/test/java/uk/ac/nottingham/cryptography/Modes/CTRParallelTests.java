@@ -0,0 +1,98 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CAST384Key;
+import uk.ac.nottingham.cryptography.CTRMode;
+import uk.ac.nottingham.cryptography.ParallelCTR;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CTRParallelTests {
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i * 13 + 5);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 7 + 100);
+        }
+    }
+
+    private static byte[] sequential(byte[] plaintext) {
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        byte[] out = plaintext.clone();
+        mode.encrypt(out);
+        return out;
+    }
+
+    @Test
+    @Order(0)
+    void smallBufferTest() {
+        byte[] plaintext = source(1001);
+        byte[] data = plaintext.clone();
+
+        new ParallelCTR(CAST384Key.of(keyA), nonceA).encrypt(data);
+        assertArrayEquals(sequential(plaintext), data);
+    }
+
+    @Test
+    @Order(1)
+    void executorTest() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        AtomicInteger tasks = new AtomicInteger();
+        try {
+            // Threshold 0 so even this buffer is split; the length ends mid-block
+            ParallelCTR ctr = new ParallelCTR(CAST384Key.of(keyA), nonceA, command -> {
+                tasks.incrementAndGet();
+                executor.execute(command);
+            }, 3, 0);
+
+            byte[] plaintext = source(24 * 20000 + 17);
+            byte[] expected = sequential(plaintext);
+            byte[] actual = new byte[plaintext.length];
+            ctr.encrypt(0, plaintext, 0, actual, 0, plaintext.length);
+
+            assertTrue(tasks.get() > 1);
+            assertArrayEquals(expected, actual);
+
+            ctr.decrypt(actual);
+            assertArrayEquals(plaintext, actual);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @Order(2)
+    void counterOffsetTest() {
+        byte[] plaintext = source(24 * 5000);
+        byte[] expected = sequential(plaintext);
+
+        // Starting at block 1000 gives the tail of the sequential output
+        ParallelCTR ctr = new ParallelCTR(CAST384Key.of(keyA), nonceA, Runnable::run, 4, 0);
+        byte[] actual = new byte[plaintext.length];
+        int from = 24 * 1000;
+        ctr.encrypt(1000, plaintext, from, actual, from, plaintext.length - from);
+
+        for (int i = from; i < plaintext.length; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CAST384;
+import uk.ac.nottingham.cryptography.CTRMode;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CTRPrefetchTests {
+
+    private static final byte[] keyA;
+    private static final byte[] keyB;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        keyB = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i * 11 + 7);
+            keyB[i] = (byte) (i * 5 + 201);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 9 + 40);
+        }
+    }
+
+    private static byte[] expected(byte[] key, byte[] plaintext) {
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), key, nonceA);
+        byte[] out = plaintext.clone();
+        mode.encrypt(out);
+        return out;
+    }
+
+    /**
+     * Encrypts data in place in pieces of the given sizes, cycling through them.
+     */
+    private static void encryptInPieces(CTRMode mode, byte[] data, int... sizes) {
+        for (int off = 0, i = 0; off < data.length; i++) {
+            int n = Math.min(sizes[i % sizes.length], data.length - off);
+            mode.encrypt(data, off, n, data, off);
+            off += n;
+        }
+    }
+
+    @Test
+    @Order(0)
+    void matchesOnDemandTest() {
+        byte[] plaintext = source(24 * 3000 + 13);
+        byte[] expected = expected(keyA, plaintext);
+
+        // Small rings wrap many times; odd sizes cross block and ring boundaries
+        int[][] rings = {{8, 1}, {8, 8}, {64, 16}, {1000, 900}};
+        for (int[] ring : rings) {
+            CTRMode mode = new CTRMode();
+            mode.enablePrefetch(ring[0], ring[1]);
+            mode.initialise(new CAST384(), keyA, nonceA);
+            try {
+                byte[] data = plaintext.clone();
+                encryptInPieces(mode, data, 1, 100, 23, 7000, 24, 5);
+                assertArrayEquals(expected, data, "ring " + ring[0] + "/" + ring[1]);
+            } finally {
+                mode.disablePrefetch();
+            }
+        }
+    }
+
+    @Test
+    @Order(1)
+    void directBufferTest() {
+        byte[] plaintext = source(5000);
+        byte[] expected = expected(keyA, plaintext);
+
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        mode.enablePrefetch(32, 8);
+        try {
+            ByteBuffer src = ByteBuffer.allocateDirect(plaintext.length);
+            src.put(plaintext).flip();
+            ByteBuffer dst = ByteBuffer.allocateDirect(plaintext.length);
+            mode.encrypt(src, dst);
+
+            byte[] actual = new byte[plaintext.length];
+            dst.flip().get(actual);
+            assertArrayEquals(expected, actual);
+        } finally {
+            mode.disablePrefetch();
+        }
+    }
+
+    @Test
+    @Order(2)
+    void toggleMidStreamTest() {
+        byte[] plaintext = source(2000);
+        byte[] expected = expected(keyA, plaintext);
+
+        // Switch on and off part way through a block; the stream must carry on
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        byte[] data = plaintext.clone();
+        mode.encrypt(data, 0, 37, data, 0);
+        mode.enablePrefetch(16, 4);
+        assertTrue(mode.isPrefetching());
+        mode.encrypt(data, 37, 500, data, 37);
+        mode.enablePrefetch(48, 48);
+        mode.encrypt(data, 537, 411, data, 537);
+        mode.disablePrefetch();
+        assertFalse(mode.isPrefetching());
+        mode.encrypt(data, 948, data.length - 948, data, 948);
+
+        assertArrayEquals(expected, data);
+    }
+
+    @Test
+    @Order(3)
+    void seekTest() {
+        byte[] plaintext = source(24 * 100);
+        byte[] expected = expected(keyA, plaintext);
+
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        mode.enablePrefetch(16, 8);
+        try {
+            // Read ahead, then seek back: the prefetched keystream must be thrown away
+            byte[] data = plaintext.clone();
+            mode.encrypt(data, 0, 1000, data, 0);
+            mode.seek(new byte[]{0, 0, 0, 0, 0, 0, 0, 10});
+            byte[] tail = plaintext.clone();
+            mode.encrypt(tail, 240, tail.length - 240, tail, 240);
+
+            byte[] expectedTail = plaintext.clone();
+            System.arraycopy(expected, 240, expectedTail, 240, expected.length - 240);
+            assertArrayEquals(expectedTail, tail);
+        } finally {
+            mode.disablePrefetch();
+        }
+    }
+
+    @Test
+    @Order(4)
+    void reinitialiseTest() {
+        byte[] plaintext = source(3000);
+
+        CTRMode mode = new CTRMode();
+        CAST384 cipher = new CAST384();
+        mode.enablePrefetch(64, 32);
+        try {
+            mode.initialise(cipher, keyA, nonceA);
+            byte[] data = plaintext.clone();
+            mode.encrypt(data, 0, 100, data, 0);
+
+            // A new key on the same cipher: nothing from the old ring may leak through
+            mode.initialise(cipher, keyB, nonceA);
+            data = plaintext.clone();
+            encryptInPieces(mode, data, 333);
+            assertArrayEquals(expected(keyB, plaintext), data);
+        } finally {
+            mode.disablePrefetch();
+        }
+    }
+
+    @Test
+    @Order(5)
+    void threadFactoryTest() throws InterruptedException {
+        AtomicInteger created = new AtomicInteger();
+        Thread[] producer = new Thread[1];
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        mode.enablePrefetch(16, 8, task -> {
+            created.incrementAndGet();
+            producer[0] = new Thread(task);
+            producer[0].setDaemon(true);
+            return producer[0];
+        });
+
+        byte[] plaintext = source(1500);
+        byte[] data = plaintext.clone();
+        mode.encrypt(data);
+        mode.disablePrefetch();
+
+        assertEquals(1, created.get());
+        producer[0].join(1000);
+        assertFalse(producer[0].isAlive());
+        assertArrayEquals(expected(keyA, plaintext), data);
+    }
+
+    @Test
+    @Order(6)
+    void unreachableModeStopsProducerTest() throws InterruptedException {
+        Thread producer = abandonedProducer();
+        assertTrue(producer.isAlive());
+
+        // The Cleaner stops the producer once the dropped mode is collected
+        for (int i = 0; i < 100 && producer.isAlive(); i++) {
+            System.gc();
+            producer.join(100);
+        }
+        assertFalse(producer.isAlive());
+    }
+
+    /**
+     * Starts prefetching on a mode that is then dropped without disablePrefetch.
+     */
+    private static Thread abandonedProducer() {
+        Thread[] producer = new Thread[1];
+        CTRMode mode = new CTRMode();
+        mode.initialise(new CAST384(), keyA, nonceA);
+        mode.enablePrefetch(16, 8, task -> {
+            producer[0] = new Thread(task);
+            producer[0].setDaemon(true);
+            return producer[0];
+        });
+        mode.encrypt(source(100));
+        return producer[0];
+    }
+
+    @Test
+    @Order(7)
+    void invalidArgumentsTest() {
+        CTRMode mode = new CTRMode();
+        assertThrows(IllegalArgumentException.class, () -> mode.enablePrefetch(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> mode.enablePrefetch(16, 0));
+        assertThrows(IllegalArgumentException.class, () -> mode.enablePrefetch(16, 17));
+        assertThrows(NullPointerException.class, () -> mode.enablePrefetch(16, 8, null));
+        assertFalse(mode.isPrefetching());
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.nottingham.cryptography.Modes;
+
+import org.junit.jupiter.api.*;
+import uk.ac.nottingham.cryptography.CASTCipher;
+import uk.ac.nottingham.cryptography.CipherMode;
+
+import java.util.Arrays;
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.ac.nottingham.cryptography.TestData.source;
+
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CTRSliceTests {
+    private final CASTCipher cipher = ServiceLoader.load(CASTCipher.class).findFirst().orElseThrow();
+    private final CipherMode mode = ServiceLoader.load(CipherMode.class).findFirst().orElseThrow();
+
+    private static final byte[] keyA;
+    private static final byte[] nonceA;
+
+    static {
+        keyA = new byte[48];
+        for (int i = 0; i < 48; i++) {
+            keyA[i] = (byte) (i + 3);
+        }
+
+        nonceA = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            nonceA[i] = (byte) (i * 3 + 19);
+        }
+    }
+
+    private byte[] expected(byte[] plaintext) {
+        byte[] out = plaintext.clone();
+        mode.initialise(cipher, keyA, nonceA);
+        mode.encrypt(out);
+        return out;
+    }
+
+    @Test
+    @Order(0)
+    void outOfPlaceTest() {
+        byte[] plaintext = source(700);
+        byte[] expected = expected(plaintext);
+
+        // Slices of a larger "packet" buffer into the middle of another buffer
+        byte[] packet = new byte[plaintext.length + 40];
+        System.arraycopy(plaintext, 0, packet, 11, plaintext.length);
+        byte[] out = new byte[plaintext.length + 9];
+
+        mode.initialise(cipher, keyA, nonceA);
+        int done = 0;
+        for (int n : new int[] { 5, 19, 24, 100, 552 }) {
+            mode.encrypt(packet, 11 + done, n, out, 9 + done);
+            done += n;
+        }
+
+        assertArrayEquals(expected, Arrays.copyOfRange(out, 9, out.length));
+        assertEquals(0, out[0]);
+        assertArrayEquals(plaintext, Arrays.copyOfRange(packet, 11, 11 + plaintext.length));
+    }
+
+    @Test
+    @Order(1)
+    void inPlaceDecryptTest() {
+        byte[] plaintext = source(333);
+        byte[] data = expected(plaintext);
+
+        mode.initialise(cipher, keyA, nonceA);
+        mode.decrypt(data, 0, 100, data, 0);
+        mode.decrypt(data, 100, 233, data, 100);
+
+        assertArrayEquals(plaintext, data);
+    }
+
+    @Test
+    @Order(2)
+    void boundsTest() {
+        mode.initialise(cipher, keyA, nonceA);
+        assertThrows(IndexOutOfBoundsException.class, () -> mode.encrypt(new byte[10], 5, 6, new byte[10], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> mode.encrypt(new byte[10], 0, 10, new byte[9], 0));
+    }
+}
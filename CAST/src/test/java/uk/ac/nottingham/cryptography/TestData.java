@@ -0,0 +1,22 @@
+package uk.ac.nottingham.cryptography;
+
+/**
+ * Deterministic inputs shared by the test classes.
+ */
+public final class TestData {
+
+    private TestData() {
+    }
+
+    /**
+     * @param length number of bytes
+     * @return length bytes of a fixed pattern that does not repeat within 256 bytes
+     */
+    public static byte[] source(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 7 + 1);
+        }
+        return data;
+    }
+}
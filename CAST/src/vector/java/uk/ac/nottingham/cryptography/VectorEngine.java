@@ -0,0 +1,231 @@
+package uk.ac.nottingham.cryptography;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.ROL;
+import static jdk.incubator.vector.VectorOperators.XOR;
+import static uk.ac.nottingham.cryptography.CASTCipher.S1;
+import static uk.ac.nottingham.cryptography.CASTCipher.S2;
+import static uk.ac.nottingham.cryptography.CASTCipher.S3;
+import static uk.ac.nottingham.cryptography.CASTCipher.S4;
+import static uk.ac.nottingham.cryptography.ScalarEngine.BLOCK_BYTES;
+import static uk.ac.nottingham.cryptography.ScalarEngine.INT_BE;
+
+/**
+ * SIMD CAST-384 engine built on the incubating Vector API.
+ * <p>
+ * How it works:
+ * A group of N blocks (N = lanes of the preferred IntVector species, e.g. 8 with AVX2
+ * or 16 with AVX-512) is transposed so that each of the words A..F becomes one vector
+ * holding that word of every block. Each F-function is then evaluated for all N blocks
+ * at once: the key is added/xored/subtracted lane-wise, rotated with a lane-wise ROL,
+ * split into its four index bytes, and the S-box values are fetched with gathers from
+ * CASTCipher.S1..S4. Blocks left over after the last full group use ScalarEngine.
+ * <p>
+ * This class needs the jdk.incubator.vector module and is only created through
+ * VectorEngines, which falls back to the scalar engines when the module is absent.
+ */
+final class VectorEngine implements BlockEngine {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private final int[] km;
+    private final int[] kr;
+    private final ScalarEngine tail;
+
+    VectorEngine(int[] Km, int[] Kr) {
+        this.tail = new ScalarEngine(Km, Kr);
+        this.km = Km;
+        this.kr = Kr;
+    }
+
+    static int lanes() {
+        return LANES;
+    }
+
+    @Override
+    public void encryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        int groups = blockCount / LANES;
+        if (groups > 0) {
+            encryptGroups(in, inOff, out, outOff, groups);
+        }
+
+        int done = groups * LANES * BLOCK_BYTES;
+        tail.encryptBlocks(in, inOff + done, out, outOff + done, blockCount - groups * LANES);
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, byte[] out, int outOff, int blockCount) {
+        int groups = blockCount / LANES;
+        if (groups > 0) {
+            decryptGroups(in, inOff, out, outOff, groups);
+        }
+
+        int done = groups * LANES * BLOCK_BYTES;
+        tail.decryptBlocks(in, inOff + done, out, outOff + done, blockCount - groups * LANES);
+    }
+
+    private void encryptGroups(byte[] in, int inOff, byte[] out, int outOff, int groups) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        int[] words = new int[6 * LANES];   // Transposed group: word j of lane l at j * LANES + l
+        int[] idx = new int[LANES];         // Gather index map
+
+        for (int g = 0; g < groups; g++) {
+            transposeIn(in, inOff, words);
+            IntVector a = IntVector.fromArray(SPECIES, words, 0);
+            IntVector b = IntVector.fromArray(SPECIES, words, LANES);
+            IntVector c = IntVector.fromArray(SPECIES, words, 2 * LANES);
+            IntVector d = IntVector.fromArray(SPECIES, words, 3 * LANES);
+            IntVector e = IntVector.fromArray(SPECIES, words, 4 * LANES);
+            IntVector f = IntVector.fromArray(SPECIES, words, 5 * LANES);
+
+            for (int k = 0; k < 36; k += 6) {             // Rounds 0 to 5: hexad
+                e = e.lanewise(XOR, f1(f, km[k], kr[k], idx));
+                d = d.lanewise(XOR, f2(e, km[k + 1], kr[k + 1], idx));
+                c = c.lanewise(XOR, f3(d, km[k + 2], kr[k + 2], idx));
+                b = b.lanewise(XOR, f4(c, km[k + 3], kr[k + 3], idx));
+                a = a.lanewise(XOR, f5(b, km[k + 4], kr[k + 4], idx));
+                f = f.lanewise(XOR, f6(a, km[k + 5], kr[k + 5], idx));
+            }
+            for (int k = 36; k < 72; k += 6) {            // Rounds 6 to 11: hexadInv
+                f = f.lanewise(XOR, f6(a, km[k + 5], kr[k + 5], idx));
+                a = a.lanewise(XOR, f5(b, km[k + 4], kr[k + 4], idx));
+                b = b.lanewise(XOR, f4(c, km[k + 3], kr[k + 3], idx));
+                c = c.lanewise(XOR, f3(d, km[k + 2], kr[k + 2], idx));
+                d = d.lanewise(XOR, f2(e, km[k + 1], kr[k + 1], idx));
+                e = e.lanewise(XOR, f1(f, km[k], kr[k], idx));
+            }
+
+            a.intoArray(words, 0);
+            b.intoArray(words, LANES);
+            c.intoArray(words, 2 * LANES);
+            d.intoArray(words, 3 * LANES);
+            e.intoArray(words, 4 * LANES);
+            f.intoArray(words, 5 * LANES);
+            transposeOut(words, out, outOff);
+            inOff += LANES * BLOCK_BYTES;
+            outOff += LANES * BLOCK_BYTES;
+        }
+    }
+
+    private void decryptGroups(byte[] in, int inOff, byte[] out, int outOff, int groups) {
+        final int[] km = this.km;
+        final int[] kr = this.kr;
+        int[] words = new int[6 * LANES];
+        int[] idx = new int[LANES];
+
+        for (int g = 0; g < groups; g++) {
+            transposeIn(in, inOff, words);
+            IntVector a = IntVector.fromArray(SPECIES, words, 0);
+            IntVector b = IntVector.fromArray(SPECIES, words, LANES);
+            IntVector c = IntVector.fromArray(SPECIES, words, 2 * LANES);
+            IntVector d = IntVector.fromArray(SPECIES, words, 3 * LANES);
+            IntVector e = IntVector.fromArray(SPECIES, words, 4 * LANES);
+            IntVector f = IntVector.fromArray(SPECIES, words, 5 * LANES);
+
+            for (int k = 66; k >= 36; k -= 6) {           // Rounds 11 to 6: hexad
+                e = e.lanewise(XOR, f1(f, km[k], kr[k], idx));
+                d = d.lanewise(XOR, f2(e, km[k + 1], kr[k + 1], idx));
+                c = c.lanewise(XOR, f3(d, km[k + 2], kr[k + 2], idx));
+                b = b.lanewise(XOR, f4(c, km[k + 3], kr[k + 3], idx));
+                a = a.lanewise(XOR, f5(b, km[k + 4], kr[k + 4], idx));
+                f = f.lanewise(XOR, f6(a, km[k + 5], kr[k + 5], idx));
+            }
+            for (int k = 30; k >= 0; k -= 6) {            // Rounds 5 to 0: hexadInv
+                f = f.lanewise(XOR, f6(a, km[k + 5], kr[k + 5], idx));
+                a = a.lanewise(XOR, f5(b, km[k + 4], kr[k + 4], idx));
+                b = b.lanewise(XOR, f4(c, km[k + 3], kr[k + 3], idx));
+                c = c.lanewise(XOR, f3(d, km[k + 2], kr[k + 2], idx));
+                d = d.lanewise(XOR, f2(e, km[k + 1], kr[k + 1], idx));
+                e = e.lanewise(XOR, f1(f, km[k], kr[k], idx));
+            }
+
+            a.intoArray(words, 0);
+            b.intoArray(words, LANES);
+            c.intoArray(words, 2 * LANES);
+            d.intoArray(words, 3 * LANES);
+            e.intoArray(words, 4 * LANES);
+            f.intoArray(words, 5 * LANES);
+            transposeOut(words, out, outOff);
+            inOff += LANES * BLOCK_BYTES;
+            outOff += LANES * BLOCK_BYTES;
+        }
+    }
+
+    private static void transposeIn(byte[] in, int off, int[] words) {
+        for (int l = 0; l < LANES; l++, off += BLOCK_BYTES) {
+            for (int j = 0; j < 6; j++) {
+                words[j * LANES + l] = (int) INT_BE.get(in, off + 4 * j);
+            }
+        }
+    }
+
+    private static void transposeOut(int[] words, byte[] out, int off) {
+        for (int l = 0; l < LANES; l++, off += BLOCK_BYTES) {
+            for (int j = 0; j < 6; j++) {
+                INT_BE.set(out, off + 4 * j, words[j * LANES + l]);
+            }
+        }
+    }
+
+    // ---------------------------------------- F Functions ----------------------------------------------------
+    // Lane-wise forms of CAST384.f1 .. f6.
+
+    private static IntVector f1(IntVector d, int Km, int Kr, int[] idx) {
+        IntVector tmp = d.add(Km).lanewise(ROL, Kr);
+        return s1(tmp, idx).lanewise(XOR, s2(tmp, idx)).sub(s3(tmp, idx)).add(s4(tmp, idx));
+    }
+
+    private static IntVector f2(IntVector d, int Km, int Kr, int[] idx) {
+        IntVector tmp = d.lanewise(XOR, Km).lanewise(ROL, Kr);
+        return s1(tmp, idx).sub(s2(tmp, idx)).add(s3(tmp, idx)).lanewise(XOR, s4(tmp, idx));
+    }
+
+    private static IntVector f3(IntVector d, int Km, int Kr, int[] idx) {
+        IntVector tmp = IntVector.broadcast(SPECIES, Km).sub(d).lanewise(ROL, Kr);
+        return s1(tmp, idx).add(s2(tmp, idx)).lanewise(XOR, s3(tmp, idx)).sub(s4(tmp, idx));
+    }
+
+    private static IntVector f4(IntVector d, int Km, int Kr, int[] idx) {
+        IntVector tmp = IntVector.broadcast(SPECIES, Km).sub(d).lanewise(ROL, Kr);
+        return s1(tmp, idx).lanewise(XOR, s2(tmp, idx)).add(s3(tmp, idx)).sub(s4(tmp, idx));
+    }
+
+    private static IntVector f5(IntVector d, int Km, int Kr, int[] idx) {
+        IntVector tmp = d.add(Km).lanewise(ROL, Kr);
+        return s1(tmp, idx).sub(s2(tmp, idx)).lanewise(XOR, s3(tmp, idx)).add(s4(tmp, idx));
+    }
+
+    private static IntVector f6(IntVector d, int Km, int Kr, int[] idx) {
+        IntVector tmp = d.lanewise(XOR, Km).lanewise(ROL, Kr);
+        return s1(tmp, idx).add(s2(tmp, idx)).sub(s3(tmp, idx)).lanewise(XOR, s4(tmp, idx));
+    }
+
+    // S-box gathers on the four bytes of each lane (most significant byte indexes S1)
+
+    private static IntVector s1(IntVector tmp, int[] idx) {
+        return gather(S1, tmp.lanewise(LSHR, 24), idx);
+    }
+
+    private static IntVector s2(IntVector tmp, int[] idx) {
+        return gather(S2, tmp.lanewise(LSHR, 16).and(0xFF), idx);
+    }
+
+    private static IntVector s3(IntVector tmp, int[] idx) {
+        return gather(S3, tmp.lanewise(LSHR, 8).and(0xFF), idx);
+    }
+
+    private static IntVector s4(IntVector tmp, int[] idx) {
+        return gather(S4, tmp.and(0xFF), idx);
+    }
+
+    private static IntVector gather(int[] box, IntVector index, int[] idx) {
+        // The incubator gather takes its index map from an int[], so spill the indices first
+        index.intoArray(idx, 0);
+        return IntVector.fromArray(SPECIES, box, 0, idx, 0);
+    }
+}